@@ -1,20 +1,18 @@
 package dev.efnilite.vilib.inventory;
 
 import dev.efnilite.vilib.event.EventWatcher;
+import dev.efnilite.vilib.inventory.item.AnimatedItem;
 import dev.efnilite.vilib.inventory.item.Item;
 import dev.efnilite.vilib.inventory.item.MenuItem;
-import dev.efnilite.vilib.util.Numbers;
 import dev.efnilite.vilib.util.Strings;
-import dev.efnilite.vilib.util.Task;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -29,32 +27,47 @@ import java.util.stream.IntStream;
 @SuppressWarnings("unused")
 public class Menu implements EventWatcher {
 
-    private final static Map<UUID, UUID> openMenus = new HashMap<>();
-    private final static List<Menu> disabledMenus = new ArrayList<>();
+    /**
+     * The columns used by {@link #getEvenlyDistributedSlots(int)} for every amount of items in a row.
+     */
+    private static final int[][] DISTRIBUTION = IntStream.rangeClosed(0, 9)
+            .mapToObj(amount -> getEvenlyDistributedSlots(amount).stream().mapToInt(Integer::intValue).toArray())
+            .toArray(int[][]::new);
 
-    private static Plugin plugin;
+    // the last click time of slots which haven't been clicked, since System.nanoTime can be any value
+    private static final long NO_CLICK = Long.MIN_VALUE;
 
+    /**
+     * Sets up the shared listener and ticker of all menus. Must be called before opening any menu.
+     *
+     * @param pl The plugin
+     */
     public static void init(Plugin pl) {
-        Task.create(pl).repeat(5 * 20).execute(() -> {
-            if (openMenus.keySet().isEmpty()) {
-                for (Menu menu : disabledMenus) {
-                    menu.unregisterAll();
-                }
-                disabledMenus.clear();
-            }
-        }).run();
-
-        plugin = pl;
+        MenuDispatcher.init(pl);
+        MenuTicker.init(pl);
     }
 
     protected final int rows;
     protected final String title;
-    protected final Map<Integer, MenuItem> items = new HashMap<>();
-    protected final List<Integer> evenlyDistributedRows = new ArrayList<>();
+    protected final MenuItem[] items;
+    protected final boolean[] evenlyDistributedRows = new boolean[6];
     protected boolean deactivated = false;
-    protected UUID inventoryId;
     protected Player player;
     protected Material filler = null;
+    protected Inventory inventory;
+    private ItemStack[] rendered;
+    private Animation[] animations;
+    private boolean opening;
+    private int updateInterval;
+    private int writtenSlots;
+    private long totalWrittenSlots;
+    private long debounce;
+    private long[] lastClicks;
+    private double clickRate;
+    private int clickBurst;
+    private double tokens;
+    private long lastRefill;
+    private long droppedClicks;
 
     public Menu(int rows, String name) {
         if (rows < 1 || rows > 6) {
@@ -62,7 +75,15 @@ public class Menu implements EventWatcher {
         }
         this.rows = rows;
         this.title = Strings.colour(name);
-        this.inventoryId = UUID.randomUUID();
+        this.items = new MenuItem[rows * 9];
+    }
+
+    // creates a menu from a compiled template, which has already been laid out
+    Menu(MenuTemplate template) {
+        this.rows = template.getRows();
+        this.title = template.getTitle();
+        this.items = new MenuItem[rows * 9];
+        template.applyLimits(this);
     }
 
     /**
@@ -94,11 +115,14 @@ public class Menu implements EventWatcher {
      * @return the instance of this class
      */
     public Menu item(int slot, MenuItem item) {
-        if (slot > rows * 9 || slot < 0) {
+        if (slot >= rows * 9 || slot < 0) {
             throw new IllegalArgumentException("Slot %d is not in inventory".formatted(slot));
         }
 
-        items.put(slot, item);
+        items[slot] = item;
+        if (item != null && isOpen()) {
+            item.open(this, slot);
+        }
         return this;
     }
 
@@ -114,7 +138,7 @@ public class Menu implements EventWatcher {
             if (row < 0 || row > 5) {
                 throw new IllegalArgumentException("Rows must be above 1 and below 6");
             }
-            evenlyDistributedRows.add(row);
+            evenlyDistributedRows[row] = true;
         }
         return this;
     }
@@ -126,7 +150,7 @@ public class Menu implements EventWatcher {
      * @see #distributeRowEvenly(int...)
      */
     public Menu distributeRowsEvenly() {
-        evenlyDistributedRows.addAll(Numbers.getFromZero(rows));
+        Arrays.fill(evenlyDistributedRows, 0, rows, true);
         return this;
     }
 
@@ -142,60 +166,90 @@ public class Menu implements EventWatcher {
     }
 
     /**
-     * Updates a specific item
+     * Ignores clicks on a slot that follow too soon after the last handled click on that slot.
+     * Ignored clicks are still cancelled when the item isn't movable.
      *
-     * @param slots The slots which are to be updated
+     * @param millis The minimum amount of milliseconds between handled clicks on a slot. 0 to disable.
+     * @return the instance of this class
      */
-    public void updateItem(int... slots) {
-        Inventory inventory = player.getOpenInventory().getTopInventory();
+    public Menu debounce(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Debounce must be 0 or above");
+        }
 
-        if (inventory.getSize() % 9 != 0) {
-            throw new IllegalArgumentException("Invalid inventory type");
+        this.debounce = millis * 1_000_000L;
+        this.lastClicks = null;
+        if (millis > 0) {
+            lastClicks = new long[rows * 9];
+            Arrays.fill(lastClicks, NO_CLICK);
         }
+        return this;
+    }
 
-        for (int slot : slots) {
-            inventory.setItem(slot, items.get(slot).build());
+    /**
+     * Limits the rate of handled clicks in this menu with a token bucket.
+     * Clicks are handled while tokens are available, and tokens are added at a fixed rate up to the burst size.
+     * Ignored clicks are still cancelled when the item isn't movable.
+     *
+     * @param clicksPerSecond The amount of tokens added per second. 0 to disable.
+     * @param burst           The maximum amount of tokens, which is the amount of clicks allowed in quick succession.
+     * @return the instance of this class
+     */
+    public Menu rateLimit(double clicksPerSecond, int burst) {
+        if (clicksPerSecond < 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be 0 or above and burst must be above 0");
         }
+
+        this.clickRate = clicksPerSecond;
+        this.clickBurst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+        return this;
     }
 
     /**
-     * Updates all items in the inventory
+     * Updates a specific item
+     *
+     * @param slots The slots which are to be updated
      */
-    public void update() {
-        Inventory inventory = player.getOpenInventory().getTopInventory();
+    public void updateItem(int... slots) {
+        for (int slot : slots) {
+            ItemStack item = build(slot);
 
-        if (inventory.getSize() % 9 != 0) {
-            throw new IllegalArgumentException("Invalid inventory type");
+            inventory.setItem(slot, item);
+            rendered[slot] = item;
         }
+    }
 
-        inventory.clear();
-        items.forEach((slot, item) -> inventory.setItem(slot, item.build()));
+    /**
+     * Updates all items in the inventory. Only slots which differ from the last update are written.
+     *
+     * @see #getWrittenSlots()
+     */
+    public void update() {
+        writtenSlots = render();
+        totalWrittenSlots += writtenSlots;
     }
 
     /**
-     * Updates all items by calling {@link #update()} in the inventory periodically.
+     * Updates all items by calling {@link #update()} in the inventory periodically, until the menu is closed.
+     * Calling this again replaces the previous interval. When called before opening, updating starts when the menu is opened.
      *
      * @param tickInterval The amount of ticks to wait between calling {@link #update()}
+     * @see MenuTicker
      */
     public void update(int tickInterval) {
         if (tickInterval <= 0) {
             throw new IllegalArgumentException("Tick interval must be above 0");
         }
+        if (deactivated) {
+            throw new IllegalStateException("Menu has been closed");
+        }
 
-        Task.create(plugin)
-                .repeat(tickInterval)
-                .execute(new BukkitRunnable() {
-                    @Override
-                    public void run() {
-                        if (deactivated) {
-                            cancel();
-                            return;
-                        }
-
-                        update();
-                    }
-                })
-                .run();
+        this.updateInterval = tickInterval;
+        if (isOpen()) {
+            MenuTicker.schedule(this, this, tickInterval, this::update);
+        }
     }
 
     /**
@@ -204,45 +258,38 @@ public class Menu implements EventWatcher {
      * @param player The player to open it to
      */
     public void open(Player player) {
-        this.player = player;
-        Inventory inventory = Bukkit.createInventory(null, rows * 9, title);
+        layout(items);
+        open(player, null);
+    }
 
-        // Evenly distributed rows
-        for (int row : evenlyDistributedRows) {
-            int min = row * 9; // 0 * 9 = 0
-            int max = min + 8; // 0 + 8 = slot 8
-            Map<Integer, MenuItem> itemsInRow = new HashMap<>();
-
-            for (int slot : items.keySet()) { // get all items in the specified row
-                if (slot >= min && slot <= max) {
-                    itemsInRow.put(slot, items.get(slot));
-                }
-            }
+    /**
+     * Moves items in evenly distributed rows and fills the empty slots with the background filler.
+     * Laying out the same items again doesn't change them.
+     *
+     * @param items The items to lay out, like the items of this menu or a copy of them.
+     */
+    protected void layout(MenuItem[] items) {
+        MenuItem[] row = new MenuItem[9];
 
-            if (itemsInRow.keySet().isEmpty()) {
+        // Evenly distributed rows
+        for (int r = 0; r < rows; r++) {
+            if (!evenlyDistributedRows[r]) {
                 continue;
             }
 
-            List<Integer> sortedSlots = itemsInRow.keySet().stream().sorted().toList(); // sort all slots
-            List<Integer> slots = getEvenlyDistributedSlots(sortedSlots.size()); // evenly distribute items
-            List<Integer> olds = new ArrayList<>();
-            List<Integer> news = new ArrayList<>();
+            int min = r * 9;
+            int amount = 0;
 
-            for (int i = 0; i < slots.size(); i++) {
-                int newSlot = slots.get(i) + (9 * row); // gets the new slot
-                int oldSlot = sortedSlots.get(i); // the previous slot
-                MenuItem item = itemsInRow.get(oldSlot); // the item in the previous slot
-
-                news.add(newSlot);
-                olds.add(oldSlot);
-                items.put(newSlot, item); // put item in new slot
+            for (int slot = min; slot < min + 9; slot++) { // take all items in the row, in order
+                if (items[slot] != null) {
+                    row[amount++] = items[slot];
+                    items[slot] = null;
+                }
             }
 
-            for (int oldSlot : olds) {
-                if (news.contains(oldSlot)) {
-                    continue;
-                }
-                items.remove(oldSlot); // remove items from previous slot without deleting ones that are to-be moved
+            int[] columns = DISTRIBUTION[amount];
+            for (int i = 0; i < amount; i++) {
+                items[min + columns[i]] = row[i];
             }
         }
 
@@ -251,56 +298,243 @@ public class Menu implements EventWatcher {
             Item fillerItem = new Item(filler, "<red> "); // fill the background with the same material
 
             // ignore already-set items
-            IntStream.range(0, rows * 9)
-                    .filter(slot -> items.get(slot) == null)
-                    .forEach(slot -> items.put(slot, fillerItem));
+            for (int slot = 0; slot < items.length; slot++) {
+                if (items[slot] == null) {
+                    items[slot] = fillerItem;
+                }
+            }
         }
+    }
 
+    /**
+     * Opens the inventory of this menu.
+     *
+     * @param player   The player to open it to
+     * @param contents The already rendered contents, which must match the items. Null to render all items.
+     */
+    void open(Player player, @Nullable ItemStack[] contents) {
+        if (MenuDispatcher.getPlugin() == null) {
+            throw new IllegalStateException("Menu.init has not been called");
+        }
 
-        player.openInventory(inventory);
-        openMenus.put(player.getUniqueId(), inventoryId);
+        // the animations of a previous open are replaced, other scheduled actions keep running
+        if (animations != null) {
+            for (Animation animation : animations) {
+                if (animation != null) {
+                    MenuTicker.cancel(animation);
+                }
+            }
+        }
 
-        items.forEach((slot, item) -> inventory.setItem(slot, item.build()));
+        this.player = player;
+        this.inventory = Bukkit.createInventory(null, rows * 9, title);
+        this.animations = null;
+
+        if (contents != null) {
+            inventory.setContents(contents);
+            rendered = contents;
+        } else {
+            rendered = new ItemStack[rows * 9];
+        }
 
-        register(plugin);
-    }
+        opening = true;
+        try {
+            player.openInventory(inventory); // closes the previous inventory, which may belong to this menu
+        } finally {
+            opening = false;
+        }
 
-    @EventHandler
-    public void click(@NotNull InventoryClickEvent event) {
-        if (deactivated || event.getClickedInventory() != event.getView().getTopInventory()) {
+        // opening was cancelled, the previous inventory of this menu was closed without cancelling its actions
+        if (player.getOpenInventory().getTopInventory() != inventory) {
+            MenuTicker.cancelAll(this);
+            deactivated = true;
             return;
         }
 
-        UUID id = openMenus.get(event.getWhoClicked().getUniqueId());
-        if (id != inventoryId) {
+        MenuDispatcher.open(inventory, this);
+        deactivated = false;
+
+        if (contents == null) {
+            render();
+        } else {
+            // rendered contents start at the first frame, so only the animations have to be started
+            for (int slot = 0; slot < items.length; slot++) {
+                if (items[slot] instanceof AnimatedItem animated) {
+                    frame(slot, animated);
+                }
+            }
+        }
+
+        for (int slot = 0; slot < items.length; slot++) {
+            if (items[slot] != null) {
+                items[slot].open(this, slot);
+            }
+        }
+
+        if (updateInterval > 0) {
+            MenuTicker.schedule(this, this, updateInterval, this::update);
+        }
+    }
+
+    // writes every slot that differs from the last render and returns the amount of written slots
+    private int render() {
+        int written = 0;
+
+        for (int slot = 0; slot < rendered.length; slot++) {
+            MenuItem item = items[slot];
+            ItemStack built = build(slot);
+
+            // players may change empty slots and movable items, so those are compared to the inventory itself
+            ItemStack current = item == null || item.isMovable() ? inventory.getItem(slot) : rendered[slot];
+
+            if (!Objects.equals(built, current)) {
+                inventory.setItem(slot, built);
+                written++;
+            }
+            rendered[slot] = built;
+        }
+
+        return written;
+    }
+
+    private ItemStack build(int slot) {
+        MenuItem item = items[slot];
+
+        if (animations != null && animations[slot] != null && animations[slot].item != item) {
+            MenuTicker.cancel(animations[slot]);
+            animations[slot] = null;
+        }
+
+        if (item instanceof AnimatedItem animated) {
+            return frame(slot, animated);
+        }
+
+        return item == null ? null : item.build();
+    }
+
+    // returns the current frame of an animated item, starting its animation if it isn't running
+    private ItemStack frame(int slot, AnimatedItem item) {
+        if (animations == null) {
+            animations = new Animation[items.length];
+        }
+
+        Animation animation = animations[slot];
+        if (animation == null) {
+            animation = new Animation(slot, item);
+            animations[slot] = animation;
+
+            if (item.getFrameCount() > 1) {
+                MenuTicker.schedule(this, animation, item.getInterval(), animation);
+            }
+        }
+
+        return item.getFrame(animation.frame);
+    }
+
+    /**
+     * Whether the inventory of this menu is the inventory the player is currently viewing.
+     *
+     * @return true if this menu is open, false if not
+     */
+    public boolean isOpen() {
+        return !deactivated && player != null && player.getOpenInventory().getTopInventory() == inventory;
+    }
+
+    /**
+     * Handles a click in the inventory of this menu. Called by the shared menu listener.
+     *
+     * @param event The event
+     */
+    public void click(@NotNull InventoryClickEvent event) {
+        if (deactivated || event.getClickedInventory() != event.getView().getTopInventory()) {
             return;
         }
 
-        MenuItem clickedItem = items.get(event.getSlot());
+        MenuItem clickedItem = getItem(event.getSlot());
         if (clickedItem == null) {
             return;
         }
 
         event.setCancelled(!clickedItem.isMovable());
 
+        if (!allowClick(event.getSlot())) {
+            droppedClicks++;
+            return;
+        }
+
         clickedItem.handleClick(this, event, event.getClick());
     }
 
-    @EventHandler
-    public void close(InventoryCloseEvent event) {
-        if (deactivated) {
-            return;
+    // whether the inventory of this menu is being opened, which closes the previous inventory of the player
+    boolean isOpening() {
+        return opening;
+    }
+
+    int getDebounce() {
+        return (int) (debounce / 1_000_000);
+    }
+
+    double getClickRate() {
+        return clickRate;
+    }
+
+    int getClickBurst() {
+        return clickBurst;
+    }
+
+    // applies the debounce and the rate limit to a click on a slot
+    private boolean allowClick(int slot) {
+        long now = System.nanoTime();
+
+        if (lastClicks != null && lastClicks[slot] != NO_CLICK && now - lastClicks[slot] < debounce) {
+            return false;
         }
 
-        UUID viewerId = event.getPlayer().getUniqueId();
-        UUID id = openMenus.get(viewerId);
-        if (id != inventoryId) {
-            return;
+        if (clickRate > 0) {
+            tokens = Math.min(clickBurst, tokens + (now - lastRefill) * clickRate / 1_000_000_000D);
+            lastRefill = now;
+
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+        }
+
+        if (lastClicks != null) {
+            lastClicks[slot] = now;
         }
+        return true;
+    }
+
+    /**
+     * Does nothing, since events are routed to menus by a shared listener.
+     *
+     * @deprecated Menus don't have to be registered as listeners.
+     */
+    @Override
+    @Deprecated
+    public void register(Plugin plugin) {
 
+    }
+
+    /**
+     * Does nothing, since events are routed to menus by a shared listener.
+     *
+     * @deprecated Menus aren't registered as listeners.
+     */
+    @Override
+    @Deprecated
+    public void unregisterAll() {
+
+    }
+
+    /**
+     * Handles closing the inventory of this menu. Called by the shared menu listener.
+     *
+     * @param event The event
+     */
+    public void close(InventoryCloseEvent event) {
         deactivated = true;
-        disabledMenus.add(this);
-        openMenus.remove(viewerId);
     }
 
     /**
@@ -310,16 +544,24 @@ public class Menu implements EventWatcher {
      * @return the item in this slot. This may be null.
      */
     public @Nullable MenuItem getItem(int slot) {
-        return items.get(slot);
+        return slot >= 0 && slot < items.length ? items[slot] : null;
     }
 
     /**
-     * Gets the slots and their respective items
+     * Gets the slots and their respective items. Items are changed with {@link #item(int, MenuItem)}.
      *
-     * @return a Map with the slots and items.
+     * @return an unmodifiable copy of the slots and items, without empty slots.
      */
     public Map<Integer, MenuItem> getItems() {
-        return items;
+        Map<Integer, MenuItem> map = new HashMap<>();
+
+        for (int slot = 0; slot < items.length; slot++) {
+            if (items[slot] != null) {
+                map.put(slot, items[slot]);
+            }
+        }
+
+        return Collections.unmodifiableMap(map);
     }
 
     /**
@@ -334,4 +576,65 @@ public class Menu implements EventWatcher {
     public String getTitle() {
         return title;
     }
+
+    /**
+     * @return The amount of slots written by the last call to {@link #update()}. Zero if nothing changed.
+     */
+    public int getWrittenSlots() {
+        return writtenSlots;
+    }
+
+    /**
+     * @return The total amount of slots written by all calls to {@link #update()}.
+     */
+    public long getTotalWrittenSlots() {
+        return totalWrittenSlots;
+    }
+
+    /**
+     * @return The amount of clicks ignored by the debounce or the rate limit.
+     */
+    public long getDroppedClicks() {
+        return droppedClicks;
+    }
+
+    /**
+     * @return The plugin passed to {@link #init(Plugin)}, or null if menus haven't been set up.
+     */
+    public static @Nullable Plugin getPlugin() {
+        return MenuDispatcher.getPlugin();
+    }
+
+    /**
+     * Shows the frames of an {@link AnimatedItem} in a slot of this menu.
+     * Frames are built by the item once, so advancing a frame only writes the slot.
+     */
+    private final class Animation implements Runnable {
+
+        private final int slot;
+        private final AnimatedItem item;
+        private int frame;
+
+        private Animation(int slot, AnimatedItem item) {
+            this.slot = slot;
+            this.item = item;
+        }
+
+        @Override
+        public void run() {
+            if (items[slot] != item || !isOpen()) {
+                MenuTicker.cancel(this);
+                if (animations != null && animations[slot] == this) {
+                    animations[slot] = null;
+                }
+                return;
+            }
+
+            frame = (frame + 1) % item.getFrameCount();
+
+            ItemStack stack = item.getFrame(frame);
+            inventory.setItem(slot, stack);
+            rendered[slot] = stack;
+        }
+    }
 }
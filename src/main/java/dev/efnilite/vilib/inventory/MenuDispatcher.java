@@ -0,0 +1,105 @@
+package dev.efnilite.vilib.inventory;
+
+import dev.efnilite.vilib.event.EventWatcher;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Routes inventory events to the {@link Menu} that owns the top inventory.
+ * A single listener is registered for all menus, and menus are looked up by their inventory,
+ * so a click costs one map lookup regardless of the amount of open menus.
+ * Menus are removed as soon as their inventory is closed.
+ *
+ * @author Efnilite
+ */
+final class MenuDispatcher implements EventWatcher {
+
+    private static final MenuDispatcher instance = new MenuDispatcher();
+    private static final Map<Inventory, Menu> menus = new HashMap<>();
+
+    private static Plugin plugin;
+
+    private MenuDispatcher() {
+    }
+
+    /**
+     * Registers the dispatcher, if it isn't registered yet.
+     *
+     * @param plugin The plugin.
+     */
+    static void init(@NotNull Plugin plugin) {
+        if (MenuDispatcher.plugin != null) {
+            return;
+        }
+
+        MenuDispatcher.plugin = plugin;
+        instance.register(plugin);
+    }
+
+    /**
+     * Starts routing events of an inventory to a menu. Must be called after the inventory has been opened,
+     * so menus whose opening was cancelled aren't kept.
+     *
+     * @param inventory The inventory.
+     * @param menu      The menu.
+     */
+    static void open(@NotNull Inventory inventory, @NotNull Menu menu) {
+        menus.put(inventory, menu);
+    }
+
+    /**
+     * @return The plugin passed to {@link Menu#init(Plugin)}.
+     */
+    static Plugin getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * @return The amount of open menus.
+     */
+    static int getOpenMenus() {
+        return menus.size();
+    }
+
+    @EventHandler
+    public void click(@NotNull InventoryClickEvent event) {
+        Menu menu = menus.get(event.getView().getTopInventory());
+
+        if (menu != null) {
+            menu.click(event);
+        }
+    }
+
+    @EventHandler
+    public void close(@NotNull InventoryCloseEvent event) {
+        Menu menu = menus.remove(event.getView().getTopInventory());
+
+        if (menu != null) {
+            // reopening a menu closes its previous inventory, which doesn't cancel its actions
+            if (!menu.isOpening()) {
+                MenuTicker.cancelAll(menu);
+            }
+            menu.close(event);
+        }
+    }
+
+    @EventHandler
+    public void disable(@NotNull PluginDisableEvent event) {
+        if (event.getPlugin() != plugin) {
+            return;
+        }
+
+        menus.clear();
+        MenuTicker.clear();
+        unregisterAll();
+        plugin = null;
+    }
+}
@@ -0,0 +1,129 @@
+package dev.efnilite.vilib.inventory;
+
+import dev.efnilite.vilib.inventory.item.MenuItem;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Function;
+
+/**
+ * A compiled {@link Menu}, which can be opened for many players.
+ * The layout of the menu, like evenly distributed rows and the background filler, is computed once,
+ * and the items are rendered once. Opening only copies the rendered items and renders the dynamic slots for the player.
+ * <p>Example:</p>
+ * <blockquote><code>MenuTemplate template = MenuTemplate.compile(new Menu(3, "Main").item(10, play).fillBackground(filler))
+ * <br>&nbsp;&nbsp;&nbsp;&nbsp;.dynamic(16, player -> new Item(Material.PLAYER_HEAD, player.getName()));
+ * <br>template.open(player);</code></blockquote>
+ * <p>Static items are shared by all opened menus, so items which refer to a single menu,
+ * like {@link dev.efnilite.vilib.inventory.item.AutoSliderItem}, should be dynamic.</p>
+ *
+ * @author Efnilite
+ */
+public class MenuTemplate {
+
+    private final int rows;
+    private final String title;
+    private final MenuItem[] items;
+    private final ItemStack[] rendered;
+    private final Function<Player, MenuItem>[] dynamic;
+    private final int debounce;
+    private final double clickRate;
+    private final int clickBurst;
+
+    private MenuTemplate(Menu menu) {
+        this.rows = menu.rows;
+        this.title = menu.title;
+        this.items = menu.items.clone();
+        this.rendered = new ItemStack[items.length];
+        this.dynamic = newDynamic(items.length);
+        this.debounce = menu.getDebounce();
+        this.clickRate = menu.getClickRate();
+        this.clickBurst = menu.getClickBurst();
+
+        menu.layout(items); // lays out the copy, so the compiled menu isn't changed
+
+        for (int slot = 0; slot < items.length; slot++) {
+            if (items[slot] != null) {
+                rendered[slot] = items[slot].build();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Player, MenuItem>[] newDynamic(int size) {
+        return (Function<Player, MenuItem>[]) new Function[size];
+    }
+
+    /**
+     * Compiles a menu. Later changes to the menu don't affect the template.
+     *
+     * @param menu The menu, containing all static items.
+     * @return The template.
+     */
+    public static MenuTemplate compile(@NotNull Menu menu) {
+        return new MenuTemplate(menu);
+    }
+
+    /**
+     * Sets a slot which is rendered for every player when opening, replacing any static item in that slot.
+     *
+     * @param slot The slot
+     * @param item The function which returns the item for the player
+     * @return the instance of this class
+     */
+    public MenuTemplate dynamic(int slot, @NotNull Function<Player, MenuItem> item) {
+        if (slot >= rows * 9 || slot < 0) {
+            throw new IllegalArgumentException("Slot %d is not in inventory".formatted(slot));
+        }
+
+        items[slot] = null;
+        rendered[slot] = null;
+        dynamic[slot] = item;
+        return this;
+    }
+
+    /**
+     * Opens a new menu from this template for the player.
+     *
+     * @param player The player to open it to
+     * @return The opened menu
+     */
+    public Menu open(@NotNull Player player) {
+        Menu menu = new Menu(this);
+        ItemStack[] contents = rendered.clone();
+
+        System.arraycopy(items, 0, menu.items, 0, items.length);
+        for (int slot = 0; slot < dynamic.length; slot++) {
+            if (dynamic[slot] == null) {
+                continue;
+            }
+
+            MenuItem item = dynamic[slot].apply(player);
+            if (item != null) {
+                menu.items[slot] = item;
+                contents[slot] = item.build();
+            }
+        }
+
+        menu.open(player, contents);
+        return menu;
+    }
+
+    // copies the click limits of the compiled menu
+    void applyLimits(Menu menu) {
+        menu.debounce(debounce);
+
+        if (clickRate > 0) {
+            menu.rateLimit(clickRate, clickBurst);
+        }
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,188 @@
+package dev.efnilite.vilib.inventory;
+
+import dev.efnilite.vilib.util.Task;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Runs the periodic updates of all open menus and their animated items from a single task.
+ * Actions are grouped in buckets by their interval, and every bucket runs on the ticks divisible by its interval.
+ * All actions of a menu are cancelled when its inventory is closed.
+ * <p>The task only runs while there are scheduled actions. Must be used on the main thread.</p>
+ *
+ * @author Efnilite
+ */
+public final class MenuTicker {
+
+    private static final Map<Integer, Map<Object, Entry>> buckets = new TreeMap<>();
+    private static final Map<Object, Entry> owners = new HashMap<>();
+    private static final List<Entry> due = new ArrayList<>();
+
+    private static Plugin plugin;
+    private static BukkitTask task;
+    private static long tick;
+
+    private MenuTicker() {
+    }
+
+    static void init(@NotNull Plugin plugin) {
+        MenuTicker.plugin = plugin;
+    }
+
+    /**
+     * Runs an action every interval while a menu is open.
+     * Every owner has at most one action, so scheduling an owner again replaces its action.
+     * Scheduling the same owner with the same menu and interval keeps the current action.
+     *
+     * @param menu     The menu. When its inventory is closed, the action is cancelled.
+     * @param owner    The owner of the action, like the menu itself or an item.
+     * @param interval The amount of ticks between runs.
+     * @param action   The action.
+     */
+    public static void schedule(@NotNull Menu menu, @NotNull Object owner, int interval, @NotNull Runnable action) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Tick interval must be above 0");
+        }
+        if (plugin == null) {
+            throw new IllegalStateException("Menu.init has not been called");
+        }
+
+        Entry current = owners.get(owner);
+        if (current != null) {
+            if (current.menu == menu && current.interval == interval) {
+                return;
+            }
+
+            cancel(owner);
+        }
+
+        Entry entry = new Entry(menu, owner, interval, action);
+        owners.put(owner, entry);
+        buckets.computeIfAbsent(interval, k -> new LinkedHashMap<>()).put(owner, entry);
+
+        if (task == null || task.isCancelled()) {
+            task = Task.create(plugin).repeat(1).execute(MenuTicker::tick).run();
+        }
+    }
+
+    /**
+     * Cancels the action of an owner.
+     *
+     * @param owner The owner.
+     */
+    public static void cancel(@NotNull Object owner) {
+        Entry entry = owners.remove(owner);
+
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Cancels all actions of a menu.
+     *
+     * @param menu The menu.
+     */
+    public static void cancelAll(@NotNull Menu menu) {
+        Iterator<Entry> iterator = owners.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+
+            if (entry.menu == menu) {
+                iterator.remove();
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * @return The amount of scheduled actions.
+     */
+    public static int size() {
+        return owners.size();
+    }
+
+    /**
+     * Cancels all actions and stops the task.
+     */
+    static void clear() {
+        owners.values().forEach(entry -> entry.cancelled = true);
+        owners.clear();
+        buckets.clear();
+        stop();
+    }
+
+    private static void remove(Entry entry) {
+        entry.cancelled = true;
+
+        Map<Object, Entry> bucket = buckets.get(entry.interval);
+        bucket.remove(entry.owner);
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.interval);
+        }
+
+        if (owners.isEmpty()) {
+            stop();
+        }
+    }
+
+    private static void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private static void tick() {
+        tick++;
+
+        for (Map.Entry<Integer, Map<Object, Entry>> bucket : buckets.entrySet()) {
+            if (tick % bucket.getKey() == 0) {
+                due.addAll(bucket.getValue().values());
+            }
+        }
+
+        if (due.isEmpty()) {
+            return;
+        }
+
+        // actions may schedule or cancel other actions, so the due entries are copied before running
+        try {
+            for (Entry entry : due) {
+                if (entry.cancelled) {
+                    continue;
+                }
+
+                try {
+                    entry.action.run();
+                } catch (Exception ex) {
+                    cancel(entry.owner);
+                    plugin.getLogger().severe("Cancelled menu action after an error: %s".formatted(ex));
+                    ex.printStackTrace();
+                }
+            }
+        } finally {
+            due.clear();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Menu menu;
+        private final Object owner;
+        private final int interval;
+        private final Runnable action;
+        private boolean cancelled;
+
+        private Entry(Menu menu, Object owner, int interval, Runnable action) {
+            this.menu = menu;
+            this.owner = owner;
+            this.interval = interval;
+            this.action = action;
+        }
+    }
+}
@@ -3,15 +3,23 @@ package dev.efnilite.vilib.inventory;
 import dev.efnilite.vilib.inventory.item.Item;
 import dev.efnilite.vilib.inventory.item.MenuItem;
 import dev.efnilite.vilib.util.Numbers;
+import dev.efnilite.vilib.util.Task;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 /**
- * A menu which contains multiple pages
+ * A menu which contains multiple pages.
+ * Pages are index ranges over the displayed items, so only the items of the current page are placed in the menu.
+ * Items can be provided as a list, by index with {@link #display(IntSupplier, IntFunction)},
+ * or per page from an async source like a database with {@link #displayAsync(Supplier, PageProvider)}.
  *
  * @author Efnilite
  */
@@ -25,7 +33,13 @@ public class PagedMenu extends Menu {
     private MenuItem prevPageItem;
     private final List<Integer> displaySlots = new ArrayList<>();
     private final List<MenuItem> totalToDisplay = new ArrayList<>();
-    private final Map<Integer, List<MenuItem>> assigned = new HashMap<>();
+    private IntSupplier displaySize;
+    private IntFunction<MenuItem> displayItem;
+    private Supplier<CompletableFuture<Integer>> asyncSize;
+    private PageProvider provider;
+    private MenuItem placeholder;
+    private final Map<Integer, CompletableFuture<List<MenuItem>>> loaded = new HashMap<>();
+    private int count;
 
     public PagedMenu(int rows, String name) {
         super(rows, name);
@@ -56,6 +70,20 @@ public class PagedMenu extends Menu {
         return this;
     }
 
+    /**
+     * Provides the items of a page.
+     */
+    @FunctionalInterface
+    public interface PageProvider {
+
+        /**
+         * @param page     The page, starting at 0.
+         * @param pageSize The amount of items on a page.
+         * @return A future with at most page size items. May be completed on any thread.
+         */
+        CompletableFuture<List<MenuItem>> load(int page, int pageSize);
+    }
+
     @Override
     public void open(Player player) {
         assignPages();
@@ -66,77 +94,205 @@ public class PagedMenu extends Menu {
 
     public void page(int delta) {
         int newPage = current + delta;
-        if (newPage < 0 || newPage > total) {
-            return;
-        }
-        if (!assigned.containsKey(newPage) || assigned.get(newPage) == null) {
+        if (newPage < 0 || newPage >= total) {
             return;
         }
 
-        List<MenuItem> values = new ArrayList<>(assigned.get(newPage));
         Item missingFiller = new Item(filler, "<red> ");
 
-        items.remove(prevPageSlot);
-        items.remove(nextPageSlot);
+        items[prevPageSlot] = null;
+        items[nextPageSlot] = null;
 
         if (newPage > 0) {
-            items.put(prevPageSlot, prevPageItem);
+            items[prevPageSlot] = prevPageItem;
         } else if (filler != null) {
-            items.put(prevPageSlot, missingFiller);
+            items[prevPageSlot] = missingFiller;
         }
         if (newPage < total - 1) {
-            items.put(nextPageSlot, nextPageItem);
+            items[nextPageSlot] = nextPageItem;
         } else if (filler != null) {
-            items.put(nextPageSlot, missingFiller);
+            items[nextPageSlot] = missingFiller;
         }
 
-        for (int slot : displaySlots) {
-            items.remove(slot);
-
-            if (!values.isEmpty()) {
-                items.put(slot, values.get(0));
-                values.remove(0);
-            } else if (filler != null) {
-                items.put(slot, missingFiller);
+        List<MenuItem> page = provider == null ? null : getLoaded(newPage);
+        int offset = newPage * displaySlots.size();
+        for (int i = 0; i < displaySlots.size(); i++) {
+            int slot = displaySlots.get(i);
+            int index = offset + i;
+            MenuItem item = null;
+            if (provider != null) {
+                item = page == null ? placeholder : i < page.size() ? page.get(i) : null;
+            } else if (index < count) {
+                item = displayItem == null ? totalToDisplay.get(index) : displayItem.apply(index);
             }
+
+            items[slot] = item != null ? item : filler != null ? missingFiller : null;
         }
+        current = newPage;
         if (delta != 0) {
             update();
         }
-        current = newPage;
+
+        if (provider != null) {
+            prefetch();
+        }
     }
 
     private void assignPages() {
-        List<MenuItem> total = new ArrayList<>(totalToDisplay);
-        List<MenuItem> thisPage = new ArrayList<>();
-
-        int page = 0;
-        while (!total.isEmpty()) {
-            for (int slot = 0; slot < displaySlots.size(); slot++) {
-                if (total.isEmpty()) {
-                    break;
-                }
-                thisPage.add(total.get(0));
-                total.remove(0);
-            }
+        int perPage = displaySlots.size();
+
+        this.current = 0;
+        loaded.clear();
+
+        if (provider != null) {
+            // the first page is shown as loading until the amount of items is known
+            this.count = perPage;
+            this.total = 1;
 
-            this.assigned.put(page, new ArrayList<>(thisPage));
-            thisPage.clear();
-            page++;
+            CompletableFuture<Integer> size = asyncSize.get();
+            whenLoaded(size, () -> {
+                this.count = size.join();
+                // an empty first page is kept, so the placeholders are replaced
+                this.total = perPage == 0 ? 0 : Math.max(1, (count + perPage - 1) / perPage);
+                refresh(current);
+            });
+            return;
         }
 
-        this.current = 0;
-        this.total = assigned.keySet().size();
+        this.count = displaySize == null ? totalToDisplay.size() : displaySize.getAsInt();
+        this.total = perPage == 0 ? 0 : (count + perPage - 1) / perPage;
+    }
+
+    // returns the items of a page if they have been loaded, and starts loading them otherwise
+    private List<MenuItem> getLoaded(int page) {
+        CompletableFuture<List<MenuItem>> future = load(page);
+
+        return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    private CompletableFuture<List<MenuItem>> load(int page) {
+        CompletableFuture<List<MenuItem>> future = loaded.get(page);
+        if (future != null) {
+            return future;
+        }
+
+        CompletableFuture<List<MenuItem>> loading = provider.load(page, displaySlots.size());
+        loaded.put(page, loading);
+
+        if (!loading.isDone()) {
+            whenLoaded(loading, () -> refresh(page));
+        }
+
+        return loading;
+    }
+
+    // loads the pages next to the current page and forgets all others
+    private void prefetch() {
+        loaded.keySet().removeIf(page -> Math.abs(page - current) > 1);
+
+        if (current > 0) {
+            load(current - 1);
+        }
+        if (current < total - 1) {
+            load(current + 1);
+        }
+    }
+
+    // redraws a page if it is still being viewed
+    private void refresh(int page) {
+        if (deactivated || inventory == null || page != current) {
+            return;
+        }
+
+        page(0);
+        update();
+    }
+
+    // runs an action on the main thread once a future completes, or logs the error it failed with
+    private void whenLoaded(CompletableFuture<?> future, Runnable action) {
+        future.whenComplete((result, ex) -> {
+            Plugin plugin = MenuDispatcher.getPlugin();
+            if (plugin == null) {
+                return;
+            }
+
+            Task.create(plugin).execute(() -> {
+                if (ex != null) {
+                    plugin.getLogger().log(Level.SEVERE, "Failed to load page of menu %s".formatted(title), ex);
+                    loaded.values().remove(future);
+                    return;
+                }
+
+                action.run();
+            }).run();
+        });
     }
 
     public PagedMenu addToDisplay(List<MenuItem> items) {
         totalToDisplay.addAll(items);
+        displaySize = null;
+        displayItem = null;
+        asyncSize = null;
+        provider = null;
         return this;
     }
 
     public void setToDisplay(List<MenuItem> items) {
         totalToDisplay.clear();
         totalToDisplay.addAll(items);
+        displaySize = null;
+        displayItem = null;
+        asyncSize = null;
+        provider = null;
+    }
+
+    /**
+     * Displays items by index instead of from a list. Only the items on the current page are requested,
+     * so large or generated collections don't have to be turned into items up front.
+     * Replaces any items added with {@link #addToDisplay(List)}.
+     *
+     * @param size The amount of items. Requested every time the menu is opened.
+     * @param item The item at an index, between 0 and the amount of items.
+     * @return the instance of this
+     */
+    public PagedMenu display(@NotNull IntSupplier size, @NotNull IntFunction<MenuItem> item) {
+        totalToDisplay.clear();
+        displaySize = size;
+        displayItem = item;
+        asyncSize = null;
+        provider = null;
+        return this;
+    }
+
+    /**
+     * Displays items which are loaded per page, for example from a database. Opening the menu doesn't wait for items,
+     * instead the {@link #placeholder(MenuItem)} is shown until the page has been loaded.
+     * The pages next to the current page are loaded in the background, so switching pages is usually instant.
+     * Replaces any items added with {@link #addToDisplay(List)}.
+     *
+     * @param size     The amount of items. Requested every time the menu is opened.
+     * @param provider The provider of the items on a page.
+     * @return the instance of this
+     */
+    public PagedMenu displayAsync(@NotNull Supplier<CompletableFuture<Integer>> size, @NotNull PageProvider provider) {
+        totalToDisplay.clear();
+        displaySize = null;
+        displayItem = null;
+        asyncSize = size;
+        this.provider = provider;
+        return this;
+    }
+
+    /**
+     * Sets the item shown in the display slots while a page is loading.
+     * When not set, the background filler is shown.
+     *
+     * @param item The item
+     * @return the instance of this
+     */
+    public PagedMenu placeholder(MenuItem item) {
+        this.placeholder = item;
+        return this;
     }
 
     public PagedMenu nextPage(int slot, MenuItem item) {
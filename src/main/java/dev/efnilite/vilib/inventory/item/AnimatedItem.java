@@ -0,0 +1,91 @@
+package dev.efnilite.vilib.inventory.item;
+
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An item which cycles through frames while its menu is open.
+ * Frames are built once, and every frame is shown for the same amount of ticks.
+ * Animations are advanced by the {@link dev.efnilite.vilib.inventory.MenuTicker} of the menu,
+ * and every menu showing this item keeps its own current frame.
+ *
+ * @author Efnilite
+ */
+public class AnimatedItem extends MenuItem {
+
+    private final List<MenuItem> items = new ArrayList<>();
+    private ItemStack[] frames;
+    private int interval = 20;
+
+    /**
+     * Adds a frame.
+     *
+     * @param item The item shown in this frame
+     * @return the instance of this class
+     */
+    public AnimatedItem frame(@NotNull MenuItem item) {
+        items.add(item);
+        frames = null;
+        return this;
+    }
+
+    /**
+     * Sets the amount of ticks every frame is shown for. Defaults to 20.
+     *
+     * @param ticks The amount of ticks
+     * @return the instance of this class
+     */
+    public AnimatedItem interval(int ticks) {
+        if (ticks <= 0) {
+            throw new IllegalArgumentException("Tick interval must be above 0");
+        }
+
+        this.interval = ticks;
+        return this;
+    }
+
+    /**
+     * Returns the built item of a frame. The returned item is shared and must not be modified.
+     *
+     * @param frame The frame, between 0 and the amount of frames
+     * @return the built item
+     */
+    public ItemStack getFrame(int frame) {
+        if (frames == null) {
+            if (items.isEmpty()) {
+                throw new IllegalArgumentException("Items size is 0!");
+            }
+
+            frames = items.stream().map(MenuItem::build).toArray(ItemStack[]::new);
+        }
+
+        return frames[frame];
+    }
+
+    /**
+     * @return The amount of frames
+     */
+    public int getFrameCount() {
+        return items.size();
+    }
+
+    /**
+     * @return The amount of ticks every frame is shown for
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    @Override
+    public ItemStack build() {
+        return getFrame(0).clone();
+    }
+
+    @Override
+    public boolean isMovable() {
+        return false;
+    }
+}
@@ -3,14 +3,12 @@ package dev.efnilite.vilib.inventory.item;
 import com.google.common.annotations.Beta;
 import dev.efnilite.vilib.inventory.Menu;
 import dev.efnilite.vilib.inventory.MenuClickEvent;
+import dev.efnilite.vilib.inventory.MenuTicker;
 import dev.efnilite.vilib.util.Colls;
-import dev.efnilite.vilib.util.Task;
 import org.bukkit.event.inventory.ClickType;
 import org.bukkit.event.inventory.InventoryClickEvent;
-import org.bukkit.inventory.InventoryView;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,7 +29,6 @@ public class AutoSliderItem extends MenuItem {
     private int current;
     private int cooldown;
     private final int slot;
-    private final Plugin plugin;
     private final Menu menu;
     private final Map<Integer, Item> items = new HashMap<>();
     private final Map<Integer, Consumer<MenuClickEvent>> clickFunctions = new HashMap<>();
@@ -39,12 +36,12 @@ public class AutoSliderItem extends MenuItem {
     /**
      * The constructor.
      *
-     * @param menu The menu that this item will be displayed in.
+     * @param menu   The menu that this item will be displayed in.
+     * @param plugin Unused, as sliding is done by the {@link MenuTicker} of the menu.
      */
     public AutoSliderItem(int slot, Menu menu, Plugin plugin) {
         this.slot = slot;
         this.menu = menu;
-        this.plugin = plugin;
     }
 
     /**
@@ -106,24 +103,20 @@ public class AutoSliderItem extends MenuItem {
             init = items.get(Colls.random(new ArrayList<>(items.keySet())));
         }
 
-        if (items.size() > 1) { // loop through if there is more than 1 player
-            BukkitRunnable runnable = new BukkitRunnable() {
-                @Override
-                public void run() {
-                    InventoryView view = menu.getPlayer().getOpenInventory();
-                    if (view.getTitle().equals(menu.getTitle())) {
-                        view.getTopInventory().setItem(slot, getNextItem().build());
-                    } else {
-                        cancel(); // prevent going on forever
-                    }
-                }
-            };
-
-            Task task = Task.create(plugin).delay(cooldown).repeat(cooldown).execute(runnable);
-            task.run();
+        return init.build();
+    }
+
+    @Override
+    public void open(Menu menu, int slot) {
+        if (menu != this.menu || items.size() <= 1) { // loop through if there is more than 1 item
+            return;
         }
 
-        return init.build();
+        // stops when the menu is closed
+        MenuTicker.schedule(menu, this, Math.max(1, cooldown), () -> {
+            getNextItem();
+            menu.updateItem(this.slot);
+        });
     }
 
     /**
@@ -21,6 +21,10 @@ import java.util.function.Function;
 
 /**
  * A class for creating items.
+ * The built {@link ItemStack} and the coloured name and lore are cached until this item is changed,
+ * so building the same item repeatedly only clones the cached {@link ItemStack}.
+ * Changes made to the list passed to {@link #lore(List)} or the meta passed to {@link #meta(ItemMeta)}
+ * are not detected, call {@link #invalidate()} after those.
  *
  * @author Efnilite
  */
@@ -39,6 +43,10 @@ public class Item extends MenuItem {
     private Multimap<Attribute, AttributeModifier> attributes = HashMultimap.create();
     private Map<Enchantment, Integer> enchantments = new HashMap<>();
 
+    private ItemStack cached;
+    private String colouredName;
+    private List<String> colouredLore;
+
     /**
      * Creates a new instance
      *
@@ -71,11 +79,18 @@ public class Item extends MenuItem {
 
     @Override
     public ItemStack build() {
+        if (cached == null) {
+            cached = render();
+        }
+
+        return cached.clone();
+    }
+
+    private ItemStack render() {
         ItemStack item = new ItemStack(material, amount);
 
-        if (meta == null) {
-            meta = Bukkit.getItemFactory().getItemMeta(item.getType());
-        }
+        // the meta is copied, so a provided meta isn't changed and enchantments or attributes aren't applied twice
+        ItemMeta meta = this.meta == null ? Bukkit.getItemFactory().getItemMeta(item.getType()) : this.meta.clone();
 
         // if this item's meta cant be modified, return itemstack instance
         if (meta == null) {
@@ -91,8 +106,15 @@ public class Item extends MenuItem {
             }
         }
 
-        meta.setDisplayName(Strings.colour(name));
-        meta.setLore(Strings.colour(lore));
+        if (colouredName == null) {
+            colouredName = Strings.colour(name);
+        }
+        if (colouredLore == null) {
+            colouredLore = Strings.colour(lore);
+        }
+
+        meta.setDisplayName(colouredName);
+        meta.setLore(colouredLore);
         meta.setCustomModelData(modelId);
 
         attributes.forEach(meta::addAttributeModifier);
@@ -104,6 +126,19 @@ public class Item extends MenuItem {
         return item;
     }
 
+    /**
+     * Clears the cached {@link ItemStack} and the coloured name and lore, so the next build renders this item again.
+     * Only needed after changing the lore list or the meta directly, as all other methods do this automatically.
+     *
+     * @return the instance of this class
+     */
+    public Item invalidate() {
+        cached = null;
+        colouredName = null;
+        colouredLore = null;
+        return this;
+    }
+
     /**
      * Builds the meta for this item and passes it in f.
      * The result of f is set as the meta for this item.
@@ -128,8 +163,13 @@ public class Item extends MenuItem {
         item.unbreakable = unbreakable;
         item.meta = meta;
         item.lore = lore;
-        item.attributes = attributes;
-        item.enchantments = enchantments;
+        item.modelId = modelId;
+        // copied, as these are changed in place and would otherwise leave the cache of the other item outdated
+        item.attributes = HashMultimap.create(attributes);
+        item.enchantments = new HashMap<>(enchantments);
+        item.cached = cached;
+        item.colouredName = colouredName;
+        item.colouredLore = colouredLore;
 
         return item;
     }
@@ -146,6 +186,7 @@ public class Item extends MenuItem {
      */
     public Item unbreakable() {
         this.unbreakable = true;
+        cached = null;
         return this;
     }
 
@@ -156,6 +197,7 @@ public class Item extends MenuItem {
      */
     public Item glowing() {
         this.glowing = true;
+        cached = null;
         return this;
     }
 
@@ -167,6 +209,7 @@ public class Item extends MenuItem {
     public Item glowing(boolean predicate) {
         if (predicate) {
             this.glowing = true;
+            cached = null;
         }
         return this;
     }
@@ -179,6 +222,8 @@ public class Item extends MenuItem {
      */
     public Item name(String name) {
         this.name = name;
+        cached = null;
+        colouredName = null;
         return this;
     }
 
@@ -190,6 +235,7 @@ public class Item extends MenuItem {
      */
     public Item meta(ItemMeta meta) {
         this.meta = meta;
+        cached = null;
         return this;
     }
 
@@ -200,6 +246,7 @@ public class Item extends MenuItem {
      */
     public Item durability(int durability) {
         this.durability = durability;
+        cached = null;
         return this;
     }
 
@@ -212,6 +259,7 @@ public class Item extends MenuItem {
      */
     public Item amount(int amount) {
         this.amount = amount;
+        cached = null;
         return this;
     }
 
@@ -223,6 +271,7 @@ public class Item extends MenuItem {
      */
     public Item material(Material material) {
         this.material = material;
+        cached = null;
         return this;
     }
 
@@ -235,6 +284,8 @@ public class Item extends MenuItem {
     public Item lore(@Nullable List<String> lore) {
         if (lore != null) {
             this.lore = lore;
+            cached = null;
+            colouredLore = null;
         }
 
         return this;
@@ -274,6 +325,7 @@ public class Item extends MenuItem {
      */
     public Item enchant(@NotNull Enchantment enchantment, int level) {
         enchantments.put(enchantment, level);
+        cached = null;
 
         return this;
     }
@@ -294,6 +346,7 @@ public class Item extends MenuItem {
      */
     public Item attribute(@NotNull Attribute attribute, double value, AttributeModifier.Operation operation) {
         attributes.put(attribute, new AttributeModifier(attribute.getKey().getKey(), value, operation));
+        cached = null;
 
         return this;
     }
@@ -310,6 +363,7 @@ public class Item extends MenuItem {
      */
     public Item attribute(@NotNull Attribute attribute, double value, @NotNull AttributeModifier.Operation operation, @NotNull EquipmentSlot slot) {
         attributes.put(attribute, new AttributeModifier(UUID.randomUUID(), attribute.getKey().getKey(), value, operation, slot));
+        cached = null;
 
         return this;
     }
@@ -323,6 +377,7 @@ public class Item extends MenuItem {
      */
     public Item attribute(@NotNull Attribute attribute, @NotNull AttributeModifier modifier) {
         attributes.put(attribute, modifier);
+        cached = null;
 
         return this;
     }
@@ -335,6 +390,7 @@ public class Item extends MenuItem {
      */
     public Item modelId(int modelId) {
         this.modelId = modelId;
+        cached = null;
 
         return this;
     }
@@ -350,6 +406,8 @@ public class Item extends MenuItem {
         this.lore = lore.stream()
                 .map(function)
                 .toList();
+        cached = null;
+        colouredLore = null;
         return this;
     }
 
@@ -362,6 +420,8 @@ public class Item extends MenuItem {
      */
     public Item modifyName(Function<String, String> function) {
         name = function.apply(name);
+        cached = null;
+        colouredName = null;
         return this;
     }
 
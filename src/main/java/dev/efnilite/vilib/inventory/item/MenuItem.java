@@ -2,13 +2,19 @@ package dev.efnilite.vilib.inventory.item;
 
 import dev.efnilite.vilib.inventory.Menu;
 import dev.efnilite.vilib.inventory.MenuClickEvent;
+import dev.efnilite.vilib.util.Task;
 import org.bukkit.event.inventory.ClickType;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
 
 /**
  * Super class for every type of item which will be displayed in the menu
@@ -43,6 +49,44 @@ public abstract class MenuItem {
         return this;
     }
 
+    /**
+     * Set a function on click which runs off the main thread, like a database query.
+     * The result is passed to apply on the main thread, if the menu is still open by then.
+     * The handler must not use the Bukkit API, and the click event can't be changed from either function.
+     *
+     * @param handler   The function which runs asynchronously and returns the result
+     * @param apply     The function which applies the result on the main thread
+     * @param clickType The click types, or left, right and middle click when none are given
+     * @param <T>       The type of the result
+     * @return the instance of this class
+     */
+    public <T> MenuItem clickAsync(Function<MenuClickEvent, T> handler, BiConsumer<MenuClickEvent, T> apply, ClickType... clickType) {
+        return click(event -> {
+            Plugin plugin = Menu.getPlugin();
+
+            // the plugin is disabled or the menu was closed before the click was handled
+            if (plugin == null || !event.menu().isOpen()) {
+                return;
+            }
+
+            CompletableFuture.supplyAsync(() -> handler.apply(event), Task.asyncExecutor(plugin)).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    plugin.getLogger().log(Level.SEVERE, "Error while handling click in menu %s".formatted(event.menu().getTitle()), ex);
+                    return;
+                }
+                if (!plugin.isEnabled()) {
+                    return;
+                }
+
+                Task.create(plugin).execute(() -> {
+                    if (event.menu().isOpen()) {
+                        apply.accept(event, result);
+                    }
+                }).run();
+            });
+        }, clickType);
+    }
+
     public void handleClick(Menu menu, InventoryClickEvent event, ClickType clickType) {
         Consumer<MenuClickEvent> consumer = clickFunctions.get(clickType);
         if (consumer == null) {
@@ -65,4 +109,14 @@ public abstract class MenuItem {
      */
     public abstract boolean isMovable();
 
+    /**
+     * Called when a menu showing this item has been opened, like to schedule actions with the {@link dev.efnilite.vilib.inventory.MenuTicker}.
+     *
+     * @param menu The opened menu
+     * @param slot The slot of this item
+     */
+    public void open(Menu menu, int slot) {
+
+    }
+
 }
@@ -4,10 +4,8 @@ import dev.efnilite.vilib.inventory.Menu;
 import dev.efnilite.vilib.inventory.MenuClickEvent;
 import dev.efnilite.vilib.util.Task;
 import org.bukkit.Material;
-import org.bukkit.entity.Player;
 import org.bukkit.event.inventory.ClickType;
 import org.bukkit.event.inventory.InventoryClickEvent;
-import org.bukkit.inventory.InventoryView;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitRunnable;
@@ -22,7 +20,6 @@ public class TimedItem extends MenuItem {
     private Task task;
     private MenuItem revertTo;
     private final Plugin plugin;
-    private final Player player;
     private final MenuItem item;
     private final MenuClickEvent event;
 
@@ -32,7 +29,6 @@ public class TimedItem extends MenuItem {
         if (revertTo == null) {
             revertTo = new Item(Material.AIR, "<red> ");
         }
-        this.player = event.getPlayer();
         this.event = event;
         this.plugin = plugin;
     }
@@ -54,8 +50,7 @@ public class TimedItem extends MenuItem {
             @Override
             public void run() {
                 Menu menu = event.menu();
-                InventoryView view = player.getOpenInventory();
-                if (view.getTitle().equals(menu.getTitle())) {
+                if (menu.isOpen()) {
                     menu.item(event.slot(), revertTo);
                     menu.updateItem(event.slot());
                 } else {
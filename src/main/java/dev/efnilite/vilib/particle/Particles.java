@@ -1,11 +1,13 @@
 package dev.efnilite.vilib.particle;
 
+import dev.efnilite.vilib.util.Region;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.util.BoundingBox;
 import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Does particle stuff
@@ -170,6 +172,62 @@ public class Particles {
         line(point4, point8, data, distanceBetween);
     }
 
+    /**
+     * Creates a box of particles around the outside of all blocks in a region.
+     *
+     * @param region          The region which the particles will go around
+     * @param world           The world
+     * @param data            The particle data
+     * @param distanceBetween The distance between particles
+     */
+    public static <T> void box(Region region, @NotNull World world, ParticleData<T> data, double distanceBetween) {
+        box(region, world, data, null, distanceBetween);
+    }
+
+    /**
+     * Creates a box of particles around the outside of all blocks in a region, only visible to a player.
+     *
+     * @param region          The region which the particles will go around
+     * @param world           The world
+     * @param data            The particle data
+     * @param player          The player, or null to show the particles to everyone
+     * @param distanceBetween The distance between particles
+     */
+    public static <T> void box(Region region, @NotNull World world, ParticleData<T> data, @Nullable Player player, double distanceBetween) {
+        Location point1 = new Location(world, region.getMinX(), region.getMinY(), region.getMinZ());
+        Location point2 = point1.clone().add(region.getWidth(), 0, 0);
+        Location point3 = point2.clone().add(0, 0, region.getLength());
+        Location point4 = point1.clone().add(0, 0, region.getLength());
+        Location point5 = point1.clone().add(0, region.getHeight(), 0);
+        Location point6 = point2.clone().add(0, region.getHeight(), 0);
+        Location point7 = point3.clone().add(0, region.getHeight(), 0);
+        Location point8 = point4.clone().add(0, region.getHeight(), 0);
+
+        edge(point1, point2, data, player, distanceBetween);
+        edge(point2, point3, data, player, distanceBetween);
+        edge(point3, point4, data, player, distanceBetween);
+        edge(point4, point1, data, player, distanceBetween);
+
+        edge(point5, point6, data, player, distanceBetween);
+        edge(point6, point7, data, player, distanceBetween);
+        edge(point7, point8, data, player, distanceBetween);
+        edge(point5, point8, data, player, distanceBetween);
+
+        edge(point1, point5, data, player, distanceBetween);
+        edge(point2, point6, data, player, distanceBetween);
+        edge(point3, point7, data, player, distanceBetween);
+        edge(point4, point8, data, player, distanceBetween);
+    }
+
+    // draws a line for a player, or for everyone if the player is null
+    private static <T> void edge(Location one, Location two, ParticleData<T> data, @Nullable Player player, double distanceBetween) {
+        if (player == null) {
+            line(one, two, data, distanceBetween);
+        } else {
+            line(one, two, data, player, distanceBetween);
+        }
+    }
+
     /**
      * {@link #line(Location, Location, ParticleData, double)} but for players
      */
@@ -0,0 +1,337 @@
+package dev.efnilite.vilib.schematic;
+
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Palette-indexed block storage over the bounding box of a schematic.
+ * Positions are relative to the minimum corner and ordered x/y/z, where z changes fastest.
+ * Empty positions have index {@link #EMPTY}.
+ *
+ * @author Efnilite
+ */
+public abstract class BlockStorage {
+
+    /**
+     * The index of empty positions.
+     */
+    public static final int EMPTY = -1;
+
+    protected final int width;
+    protected final int height;
+    protected final int length;
+    protected final BlockData[] palette;
+
+    protected BlockStorage(int width, int height, int length, @NotNull BlockData[] palette) {
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.palette = palette;
+    }
+
+    /**
+     * Visits every non-empty position.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * @param x     The x offset.
+         * @param y     The y offset.
+         * @param z     The z offset.
+         * @param index The palette index.
+         */
+        void visit(int x, int y, int z, int index);
+    }
+
+    /**
+     * @param x The x offset.
+     * @param y The y offset.
+     * @param z The z offset.
+     * @return The palette index at this position, or {@link #EMPTY}.
+     */
+    public abstract int get(int x, int y, int z);
+
+    /**
+     * @return The amount of non-empty positions.
+     */
+    public abstract int size();
+
+    /**
+     * Visits every non-empty position in x/y/z order.
+     *
+     * @param visitor The visitor.
+     */
+    public abstract void forEach(@NotNull Visitor visitor);
+
+    /**
+     * @param x The x offset.
+     * @param y The y offset.
+     * @param z The z offset.
+     * @return The {@link BlockData} at this position. Null if empty or unknown.
+     */
+    public @Nullable BlockData getBlockData(int x, int y, int z) {
+        int index = get(x, y, z);
+
+        return index == EMPTY ? null : palette[index];
+    }
+
+    /**
+     * Entries are shared with other schematics through {@link dev.efnilite.vilib.schematic.io.BlockDataCache}
+     * and must not be modified.
+     *
+     * @return The palette. Entries may be null when the block data is unknown on this version.
+     */
+    public BlockData[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * @return The size over the x-axis.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The size over the y-axis.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The size over the z-axis.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The amount of positions in the bounding box.
+     */
+    public int getVolume() {
+        return width * height * length;
+    }
+
+    /**
+     * Returns a copy of this storage rotated around the y-axis, including a rotated palette.
+     * A quarter turn is counterclockwise when viewed from above, so north becomes west.
+     * The minimum corner of the copy is the minimum corner of the rotated bounding box.
+     *
+     * @param turns The amount of quarter turns, between 0 and 3.
+     * @return The rotated copy.
+     */
+    public BlockStorage rotate(int turns) {
+        boolean swap = turns % 2 == 1;
+        int rotatedWidth = swap ? length : width;
+        int rotatedLength = swap ? width : length;
+
+        Builder builder = builder(rotatedWidth, height, rotatedLength, Rotations.rotate(palette, turns), size());
+        forEach((x, y, z, index) -> {
+            switch (turns) {
+                case 1 -> builder.set(z, y, width - 1 - x, index);
+                case 2 -> builder.set(width - 1 - x, y, length - 1 - z, index);
+                case 3 -> builder.set(length - 1 - z, y, x, index);
+                default -> builder.set(x, y, z, index);
+            }
+        });
+
+        return builder.build();
+    }
+
+    protected int linear(int x, int y, int z) {
+        return (x * height + y) * length + z;
+    }
+
+    /**
+     * Creates a new builder. Dense storage is picked when at least a quarter of the bounding box is filled,
+     * sparse storage otherwise.
+     *
+     * @param width   The size over the x-axis.
+     * @param height  The size over the y-axis.
+     * @param length  The size over the z-axis.
+     * @param palette The palette.
+     * @param count   The expected amount of non-empty positions.
+     * @return A new builder.
+     */
+    public static Builder builder(int width, int height, int length, @NotNull BlockData[] palette, int count) {
+        return new Builder(width, height, length, palette, (long) count * 4 < (long) width * height * length);
+    }
+
+    /**
+     * Builds a {@link BlockStorage}.
+     */
+    public static class Builder {
+
+        private final int width;
+        private final int height;
+        private final int length;
+        private final BlockData[] palette;
+        private final boolean sparse;
+
+        private short[] shorts;
+        private int[] ints;
+        private long[] entries;
+        private int size;
+        private boolean sorted = true;
+
+        private Builder(int width, int height, int length, BlockData[] palette, boolean sparse) {
+            this.width = width;
+            this.height = height;
+            this.length = length;
+            this.palette = palette;
+            this.sparse = sparse;
+
+            if (sparse) {
+                entries = new long[16];
+            } else if (palette.length < Short.MAX_VALUE) {
+                shorts = new short[width * height * length];
+            } else {
+                ints = new int[width * height * length];
+            }
+        }
+
+        /**
+         * Sets a position. Every position may only be set once.
+         *
+         * @param x     The x offset.
+         * @param y     The y offset.
+         * @param z     The z offset.
+         * @param index The palette index.
+         * @return This builder.
+         */
+        public Builder set(int x, int y, int z, int index) {
+            int position = (x * height + y) * length + z;
+
+            if (shorts != null) {
+                shorts[position] = (short) (index + 1);
+            } else if (ints != null) {
+                ints[position] = index + 1;
+            } else {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                if (size > 0 && (int) (entries[size - 1] >>> 32) > position) {
+                    sorted = false;
+                }
+                entries[size] = ((long) position << 32) | index;
+            }
+
+            size++;
+            return this;
+        }
+
+        /**
+         * @return The built storage.
+         */
+        public BlockStorage build() {
+            if (!sparse) {
+                return new Dense(width, height, length, palette, shorts, ints, size);
+            }
+
+            if (!sorted) {
+                Arrays.sort(entries, 0, size);
+            }
+
+            int[] positions = new int[size];
+            int[] indices = new int[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = (int) (entries[i] >>> 32);
+                indices[i] = (int) entries[i];
+            }
+
+            return new Sparse(width, height, length, palette, positions, indices);
+        }
+    }
+
+    /**
+     * Stores an index for every position in the bounding box, offset by one so zero is empty.
+     */
+    private static class Dense extends BlockStorage {
+
+        private final short[] shorts;
+        private final int[] ints;
+        private final int size;
+
+        private Dense(int width, int height, int length, BlockData[] palette, short[] shorts, int[] ints, int size) {
+            super(width, height, length, palette);
+            this.shorts = shorts;
+            this.ints = ints;
+            this.size = size;
+        }
+
+        @Override
+        public int get(int x, int y, int z) {
+            int position = linear(x, y, z);
+
+            return (shorts != null ? shorts[position] : ints[position]) - 1;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void forEach(@NotNull Visitor visitor) {
+            int position = 0;
+
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    for (int z = 0; z < length; z++) {
+                        int value = shorts != null ? shorts[position] : ints[position];
+                        position++;
+
+                        if (value != 0) {
+                            visitor.visit(x, y, z, value - 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores only the non-empty positions, sorted, for hollow builds.
+     */
+    private static class Sparse extends BlockStorage {
+
+        private final int[] positions;
+        private final int[] indices;
+
+        private Sparse(int width, int height, int length, BlockData[] palette, int[] positions, int[] indices) {
+            super(width, height, length, palette);
+            this.positions = positions;
+            this.indices = indices;
+        }
+
+        @Override
+        public int get(int x, int y, int z) {
+            int i = Arrays.binarySearch(positions, linear(x, y, z));
+
+            return i < 0 ? EMPTY : indices[i];
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+        @Override
+        public void forEach(@NotNull Visitor visitor) {
+            int area = height * length;
+
+            for (int i = 0; i < positions.length; i++) {
+                int position = positions[i];
+                int x = position / area;
+                int rest = position - x * area;
+
+                visitor.visit(x, rest / length, rest % length, indices[i]);
+            }
+        }
+    }
+}
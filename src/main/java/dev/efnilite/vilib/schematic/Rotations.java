@@ -0,0 +1,146 @@
+package dev.efnilite.vilib.schematic;
+
+import org.bukkit.Axis;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rotates {@link BlockData} by quarter turns around the y-axis.
+ * A quarter turn is counterclockwise when viewed from above, like {@link org.bukkit.util.Vector#rotateAroundY(double)}
+ * with an angle of pi / 2, so north becomes west.
+ *
+ * @author Efnilite
+ */
+final class Rotations {
+
+    /**
+     * All horizontal faces in clockwise order, starting at north.
+     */
+    private static final BlockFace[] CIRCLE = {
+            BlockFace.NORTH, BlockFace.NORTH_NORTH_EAST, BlockFace.NORTH_EAST, BlockFace.EAST_NORTH_EAST,
+            BlockFace.EAST, BlockFace.EAST_SOUTH_EAST, BlockFace.SOUTH_EAST, BlockFace.SOUTH_SOUTH_EAST,
+            BlockFace.SOUTH, BlockFace.SOUTH_SOUTH_WEST, BlockFace.SOUTH_WEST, BlockFace.WEST_SOUTH_WEST,
+            BlockFace.WEST, BlockFace.WEST_NORTH_WEST, BlockFace.NORTH_WEST, BlockFace.NORTH_NORTH_WEST};
+
+    private Rotations() {
+    }
+
+    /**
+     * @param radians The angle in radians.
+     * @return The angle rounded to the closest amount of quarter turns, between 0 and 3.
+     */
+    static int toTurns(double radians) {
+        return (int) Math.floorMod(Math.round(radians / (Math.PI / 2)), 4L);
+    }
+
+    /**
+     * Rotates every entry of a palette. Entries are cloned, so the original palette is unaffected.
+     *
+     * @param palette The palette.
+     * @param turns   The amount of quarter turns, between 0 and 3.
+     * @return The rotated palette.
+     */
+    static BlockData[] rotate(BlockData[] palette, int turns) {
+        BlockData[] rotated = new BlockData[palette.length];
+
+        for (int i = 0; i < palette.length; i++) {
+            rotated[i] = palette[i] == null ? null : rotate(palette[i], turns);
+        }
+
+        return rotated;
+    }
+
+    // stairs are directional and their shape is relative to their facing, so they only need their facing rotated
+    private static BlockData rotate(BlockData original, int turns) {
+        BlockData data = original.clone();
+
+        if (data instanceof Directional directional) {
+            BlockFace facing = rotate(directional.getFacing(), turns);
+
+            if (directional.getFaces().contains(facing)) {
+                directional.setFacing(facing);
+            }
+        }
+
+        if (data instanceof Rotatable rotatable) {
+            rotatable.setRotation(rotate(rotatable.getRotation(), turns));
+        }
+
+        if (data instanceof Orientable orientable && turns % 2 == 1 && orientable.getAxis() != Axis.Y) {
+            Axis axis = orientable.getAxis() == Axis.X ? Axis.Z : Axis.X;
+
+            if (orientable.getAxes().contains(axis)) {
+                orientable.setAxis(axis);
+            }
+        }
+
+        if (data instanceof MultipleFacing facing) {
+            List<BlockFace> faces = new ArrayList<>(4);
+
+            for (BlockFace face : facing.getFaces()) {
+                if (isHorizontal(face)) {
+                    faces.add(face);
+                    facing.setFace(face, false);
+                }
+            }
+
+            for (BlockFace face : faces) {
+                BlockFace to = rotate(face, turns);
+
+                facing.setFace(facing.getAllowedFaces().contains(to) ? to : face, true);
+            }
+        }
+
+        if (data instanceof Rail rail) {
+            Rail.Shape shape = rail.getShape();
+
+            for (int i = 0; i < turns; i++) {
+                shape = rotate(shape);
+            }
+
+            if (rail.getShapes().contains(shape)) {
+                rail.setShape(shape);
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * @param face  The face.
+     * @param turns The amount of quarter turns, between 0 and 3.
+     * @return The rotated face. Faces that aren't horizontal are returned as-is.
+     */
+    static BlockFace rotate(BlockFace face, int turns) {
+        for (int i = 0; i < CIRCLE.length; i++) {
+            if (CIRCLE[i] == face) {
+                return CIRCLE[Math.floorMod(i - 4 * turns, CIRCLE.length)];
+            }
+        }
+
+        return face;
+    }
+
+    private static boolean isHorizontal(BlockFace face) {
+        return face == BlockFace.NORTH || face == BlockFace.EAST || face == BlockFace.SOUTH || face == BlockFace.WEST;
+    }
+
+    // rotates a rail shape by a single quarter turn
+    private static Rail.Shape rotate(Rail.Shape shape) {
+        return switch (shape) {
+            case NORTH_SOUTH -> Rail.Shape.EAST_WEST;
+            case EAST_WEST -> Rail.Shape.NORTH_SOUTH;
+            case ASCENDING_NORTH -> Rail.Shape.ASCENDING_WEST;
+            case ASCENDING_WEST -> Rail.Shape.ASCENDING_SOUTH;
+            case ASCENDING_SOUTH -> Rail.Shape.ASCENDING_EAST;
+            case ASCENDING_EAST -> Rail.Shape.ASCENDING_NORTH;
+            case SOUTH_EAST -> Rail.Shape.NORTH_EAST;
+            case NORTH_EAST -> Rail.Shape.NORTH_WEST;
+            case NORTH_WEST -> Rail.Shape.SOUTH_WEST;
+            case SOUTH_WEST -> Rail.Shape.SOUTH_EAST;
+        };
+    }
+}
@@ -1,9 +1,10 @@
 package dev.efnilite.vilib.schematic;
 
+import dev.efnilite.vilib.schematic.io.PasteResult;
 import dev.efnilite.vilib.schematic.io.SchematicPaster;
 import dev.efnilite.vilib.schematic.io.SchematicReader;
 import dev.efnilite.vilib.schematic.io.SchematicWriter;
-import dev.efnilite.vilib.util.Task;
+import dev.efnilite.vilib.util.BlockPlacer;
 import org.bukkit.Location;
 import org.bukkit.block.Block;
 import org.bukkit.block.data.BlockData;
@@ -13,12 +14,11 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import static java.lang.Math.max;
-import static java.lang.Math.min;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 /**
  * Main schematic handling class.
@@ -29,11 +29,19 @@ import static java.lang.Math.min;
 public class Schematic {
 
     /**
-     * The version of this library instance.
+     * The version of the file format this library instance writes.
+     * Version 1 uses Java serialization, version 2 uses the compact binary format.
+     * Files of all versions up to this one can be read.
      */
-    public static final int VERSION = 1;
+    public static final int VERSION = 2;
     private final File file;
-    private final Map<Vector, BlockData> vectorBlockMap;
+    private final BlockStorage blocks;
+    private final int width;
+    private final int height;
+    private final int length;
+    private final Variant[] variants = new Variant[4];
+    private volatile Map<Vector, BlockData> vectorBlockMap;
+
     /**
      * Constructor.
      *
@@ -41,7 +49,10 @@ public class Schematic {
      */
     public Schematic(@NotNull File file, @NotNull Plugin plugin) throws IOException, ClassNotFoundException {
         this.file = file;
-        this.vectorBlockMap = new SchematicReader().read(file, plugin);
+        this.blocks = new SchematicReader().read(file, plugin);
+        this.width = blocks.getWidth();
+        this.height = blocks.getHeight();
+        this.length = blocks.getLength();
     }
 
     /**
@@ -50,43 +61,186 @@ public class Schematic {
      * @param location The smallest location.
      */
     public List<Block> paste(Location location) {
-        return new SchematicPaster().paste(location, vectorBlockMap);
+        return new SchematicPaster().paste(location, blocks);
+    }
+
+    /**
+     * Pastes a schematic over multiple ticks, using the default budget per tick.
+     * Must be called on the main thread.
+     *
+     * @param location The smallest location.
+     * @param plugin   The plugin to register the placing task with.
+     * @return A future which completes when all blocks have been placed.
+     */
+    public CompletableFuture<PasteResult> pasteAsync(Location location, Plugin plugin) {
+        return pasteAsync(location, BlockPlacer.create(plugin));
+    }
+
+    /**
+     * Pastes a schematic over multiple ticks. Must be called on the main thread.
+     *
+     * @param location The smallest location.
+     * @param placer   The placer, which determines the budget per tick and progress reporting.
+     * @return A future which completes when all blocks have been placed.
+     */
+    public CompletableFuture<PasteResult> pasteAsync(Location location, BlockPlacer placer) {
+        return new SchematicPaster().pasteAsync(location, blocks, placer);
     }
 
     /**
      * Pastes a schematic at angles rotation.
+     * The rotation is rounded to the closest multiple of 90 degrees.
+     * Rotated variants are computed once and cached, so repeated rotated pastes cost the same as unrotated ones.
      *
      * @param location The smallest location.
      * @param rotation The rotation where y = yaw in rad.
      */
     public List<Block> paste(Location location, double rotation) {
-        return new SchematicPaster().paste(location, rotation, vectorBlockMap);
+        Variant variant = getVariant(Rotations.toTurns(rotation));
+
+        return new SchematicPaster().paste(location.clone().add(variant.offsetX(), 0, variant.offsetZ()), variant.blocks());
+    }
+
+    /**
+     * Pastes a schematic at angles rotation over multiple ticks. Must be called on the main thread.
+     * The rotation is rounded to the closest multiple of 90 degrees.
+     *
+     * @param location The smallest location.
+     * @param rotation The rotation where y = yaw in rad.
+     * @param placer   The placer, which determines the budget per tick and progress reporting.
+     * @return A future which completes when all blocks have been placed.
+     */
+    public CompletableFuture<PasteResult> pasteAsync(Location location, double rotation, BlockPlacer placer) {
+        Variant variant = getVariant(Rotations.toTurns(rotation));
+
+        return new SchematicPaster().pasteAsync(location.clone().add(variant.offsetX(), 0, variant.offsetZ()), variant.blocks(), placer);
+    }
+
+    /**
+     * Pastes a schematic over multiple ticks, only placing blocks which differ from the blocks in the world.
+     * Best suited for resetting regions which are mostly unchanged. Must be called on the main thread.
+     *
+     * @param location The smallest location.
+     * @param placer   The placer, which determines the budget per tick and progress reporting.
+     * @return A future which completes when all differing blocks have been placed, with the amount of changed blocks.
+     * @see SchematicPaster#pasteDiff(Location, BlockStorage, BlockPlacer)
+     */
+    public CompletableFuture<PasteResult> pasteDiff(Location location, BlockPlacer placer) {
+        return new SchematicPaster().pasteDiff(location, blocks, placer);
+    }
+
+    /**
+     * Pastes a schematic at angles rotation over multiple ticks, only placing blocks which differ from the blocks in the world.
+     * The rotation is rounded to the closest multiple of 90 degrees. Must be called on the main thread.
+     *
+     * @param location The smallest location.
+     * @param rotation The rotation where y = yaw in rad.
+     * @param placer   The placer, which determines the budget per tick and progress reporting.
+     * @return A future which completes when all differing blocks have been placed, with the amount of changed blocks.
+     */
+    public CompletableFuture<PasteResult> pasteDiff(Location location, double rotation, BlockPlacer placer) {
+        Variant variant = getVariant(Rotations.toTurns(rotation));
+
+        return new SchematicPaster().pasteDiff(location.clone().add(variant.offsetX(), 0, variant.offsetZ()), variant.blocks(), placer);
+    }
+
+    // returns the blocks rotated by the amount of quarter turns, offset so rotation happens around the paste location
+    private Variant getVariant(int turns) {
+        synchronized (variants) {
+            Variant variant = variants[turns];
+
+            if (variant == null) {
+                int offsetX = switch (turns) {
+                    case 2 -> -(width - 1);
+                    case 3 -> -(length - 1);
+                    default -> 0;
+                };
+                int offsetZ = switch (turns) {
+                    case 1 -> -(width - 1);
+                    case 2 -> -(length - 1);
+                    default -> 0;
+                };
+
+                variant = new Variant(turns == 0 ? blocks : blocks.rotate(turns), offsetX, offsetZ);
+                variants[turns] = variant;
+            }
+
+            return variant;
+        }
     }
 
     /**
      * @return The dimensions of this schematic.
      */
     public Vector getDimensions() {
-        Set<Vector> offsets = vectorBlockMap.keySet();
+        return new Vector(width - 1, height - 1, length - 1);
+    }
 
-        Vector min = offsets.stream().reduce((a, b) -> new Vector(min(a.getX(), b.getX()), min(a.getY(), b.getY()), min(a.getZ(), b.getZ()))).orElseThrow();
-        Vector max = offsets.stream().reduce((a, b) -> new Vector(max(a.getX(), b.getX()), max(a.getY(), b.getY()), max(a.getZ(), b.getZ()))).orElseThrow();
+    /**
+     * @return The size over the x-axis.
+     */
+    public int getWidth() {
+        return width;
+    }
 
-        return max.subtract(min);
+    /**
+     * @return The size over the y-axis.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The size over the z-axis.
+     */
+    public int getLength() {
+        return length;
     }
 
     /**
      * @return True when this schematic contains unknown {@link BlockData}, false if it does.
      */
     public boolean hasUnknownMaterials() {
-        return vectorBlockMap.containsValue(null);
+        for (BlockData data : blocks.getPalette()) {
+            if (data == null) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
+     * @return The palette-indexed block storage.
+     */
+    public BlockStorage getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the map of vectors mapped to each {@link BlockData}.
+     * This map is built on first use and only kept for compatibility. Prefer {@link #getBlocks()}.
+     * The {@link BlockData} instances are shared and must not be modified.
+     *
      * @return The map of vectors mapped to each {@link BlockData}.
      */
     public Map<Vector, BlockData> getVectorBlockMap() {
-        return vectorBlockMap;
+        Map<Vector, BlockData> map = vectorBlockMap;
+
+        if (map == null) {
+            synchronized (this) {
+                map = vectorBlockMap;
+
+                if (map == null) {
+                    Map<Vector, BlockData> built = new HashMap<>(Math.max(16, (int) (blocks.size() / 0.75F) + 1));
+                    BlockData[] palette = blocks.getPalette();
+
+                    blocks.forEach((x, y, z, index) -> built.put(new Vector(x, y, z), palette[index]));
+                    vectorBlockMap = map = built;
+                }
+            }
+        }
+
+        return map;
     }
 
     /**
@@ -118,6 +272,7 @@ public class Schematic {
 
     /**
      * Saves the selection between the two locations asynchronously to file.
+     * Failures are logged. Use {@link #saveAsync(File, Location, Location, Plugin)} to wait for the file.
      *
      * @param file The file.
      * @param pos1 The first position.
@@ -129,12 +284,46 @@ public class Schematic {
 
     /**
      * Saves the selection between the two locations asynchronously to file.
+     * Failures are logged. Use {@link #saveAsync(File, Location, Location, Plugin)} to wait for the file.
      *
      * @param file The file.
      * @param pos1 The first position.
      * @param pos2 The second position.
      */
     public static void save(File file, Location pos1, Location pos2, Plugin plugin) {
-        Task.create(plugin).async().execute(() -> new SchematicWriter().save(file, pos1, pos2, plugin)).run();
+        saveAsync(file, pos1, pos2, plugin);
+    }
+
+    /**
+     * Saves the selection between the two locations asynchronously to file, see {@link SchematicWriter#saveAsync}.
+     *
+     * @param file The file.
+     * @param pos1 The first position.
+     * @param pos2 The second position.
+     * @return A future which completes when the file has been written.
+     */
+    public static CompletableFuture<Void> saveAsync(File file, Location pos1, Location pos2, Plugin plugin) {
+        return saveAsync(file, pos1, pos2, plugin, SchematicWriter.Encoding.COMPRESSED);
+    }
+
+    /**
+     * Saves the selection between the two locations asynchronously to file, see {@link SchematicWriter#saveAsync}.
+     *
+     * @param file     The file.
+     * @param pos1     The first position.
+     * @param pos2     The second position.
+     * @param encoding How block indices are stored.
+     * @return A future which completes when the file has been written.
+     */
+    public static CompletableFuture<Void> saveAsync(File file, Location pos1, Location pos2, Plugin plugin, SchematicWriter.Encoding encoding) {
+        return new SchematicWriter().saveAsync(file, pos1, pos2, plugin, encoding).whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to save schematic %s".formatted(file.getName()), ex);
+            }
+        });
+    }
+
+    private record Variant(BlockStorage blocks, int offsetX, int offsetZ) {
+
     }
 }
@@ -1,40 +1,397 @@
 package dev.efnilite.vilib.schematic;
 
+import dev.efnilite.vilib.event.EventWatcher;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.server.PluginDisableEvent;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
 
+/**
+ * Thread-safe registry of schematics per plugin.
+ * Schematics can be loaded in parallel up front with {@link #addFromFiles(Plugin, File...)},
+ * or registered with {@link #register(Plugin, File...)} and loaded on first use.
+ * <p>To prevent all schematics from staying on the heap, a maximum total weight (the amount of blocks) can be set
+ * with {@link #maxWeight(long)}, after which the least recently used schematics are unloaded.
+ * Alternatively, {@link #softReferences(boolean)} lets the garbage collector unload schematics when memory is low.
+ * Unloaded schematics are reloaded from their file on next use.</p>
+ *
+ * @author Efnilite
+ */
 public class Schematics {
 
-    private static final Map<Plugin, Map<String, Schematic>> cache = new HashMap<>();
+    private static final Map<Plugin, Map<String, Entry>> cache = new ConcurrentHashMap<>();
+    private static final AtomicLong clock = new AtomicLong();
+    private static final AtomicLong weight = new AtomicLong();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder loads = new LongAdder();
+    private static final LongAdder loadNanos = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
 
+    private static volatile long maxWeight = Long.MAX_VALUE;
+    private static volatile boolean soft = false;
+    private static ExecutorService loader;
+
+    /**
+     * Loads all files in parallel and waits until every file has been loaded.
+     *
+     * @param plugin The plugin.
+     * @param files  The files.
+     */
     public static void addFromFiles(@NotNull Plugin plugin, @NotNull File... files) throws IOException, ClassNotFoundException {
-        Map<String, Schematic> current = cache.getOrDefault(plugin, new HashMap<>());
+        try {
+            addFromFilesAsync(plugin, files).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException io) {
+                throw io;
+            } else if (ex.getCause() instanceof ClassNotFoundException cnf) {
+                throw cnf;
+            }
+            throw ex;
+        }
+
+        plugin.getLogger().info("Loaded all schematics!");
+    }
+
+    /**
+     * Loads all files in parallel on a worker pool.
+     *
+     * @param plugin The plugin.
+     * @param files  The files.
+     * @return A future which completes when every file has been loaded.
+     */
+    public static CompletableFuture<Void> addFromFilesAsync(@NotNull Plugin plugin, @NotNull File... files) {
+        register(plugin, files);
+
+        Map<String, Entry> entries = cache.get(plugin);
+        CompletableFuture<?>[] futures = new CompletableFuture[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            Entry entry = entries.get(files[i].getName());
+
+            futures[i] = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return entry.load();
+                } catch (IOException | ClassNotFoundException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, getLoader());
+        }
+
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Registers files without loading them. Each file is loaded on first use.
+     * A file which replaces a registered file with the same name, or which has changed on disk since it was loaded,
+     * unloads the previous schematic, so it is read again.
+     *
+     * @param plugin The plugin.
+     * @param files  The files.
+     */
+    public static void register(@NotNull Plugin plugin, @NotNull File... files) {
+        Map<String, Entry> current = cache.computeIfAbsent(plugin, k -> {
+            new Unloader(plugin).register(plugin);
+            return new ConcurrentHashMap<>();
+        });
 
         for (File file : files) {
-            current.put(file.getName(), Schematic.load(file, plugin));
+            current.compute(file.getName(), (name, previous) -> {
+                if (previous != null && previous.isCurrent(file)) {
+                    return previous;
+                }
+                if (previous != null) {
+                    previous.unload();
+                }
+
+                return new Entry(plugin, file);
+            });
         }
+    }
 
-        cache.put(plugin, current);
+    /**
+     * Returns a schematic, loading it on this thread if it isn't loaded.
+     *
+     * @param plugin        The plugin.
+     * @param schematicName The file name of the schematic.
+     * @return The schematic. Null if it isn't registered or couldn't be loaded.
+     */
+    public static @Nullable Schematic getSchematic(@NotNull Plugin plugin, @NotNull String schematicName) {
+        Entry entry = getEntry(plugin, schematicName);
+        if (entry == null) {
+            return null;
+        }
 
-        plugin.getLogger().info("Loaded all schematics!");
+        try {
+            return entry.get();
+        } catch (IOException | ClassNotFoundException ex) {
+            plugin.getLogger().log(Level.WARNING, "Failed to load schematic %s".formatted(schematicName), ex);
+            return null;
+        }
     }
 
-    public static Schematic getSchematic(@NotNull Plugin plugin, @NotNull String schematicName) {
-        return cache.get(plugin).get(schematicName);
+    /**
+     * Returns a schematic, loading it on the worker pool if it isn't loaded.
+     *
+     * @param plugin        The plugin.
+     * @param schematicName The file name of the schematic.
+     * @return A future with the schematic. Completes with null if it isn't registered.
+     */
+    public static CompletableFuture<Schematic> getSchematicAsync(@NotNull Plugin plugin, @NotNull String schematicName) {
+        Entry entry = getEntry(plugin, schematicName);
+        if (entry == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Schematic loaded = entry.getLoaded();
+        if (loaded != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(loaded);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return entry.get();
+            } catch (IOException | ClassNotFoundException ex) {
+                throw new CompletionException(ex);
+            }
+        }, getLoader());
     }
 
     public static Set<String> getSchematicNames(@NotNull Plugin plugin) {
-        return cache.get(plugin).keySet();
+        return cache.getOrDefault(plugin, Collections.emptyMap()).keySet();
     }
 
+    /**
+     * Returns all schematics of a plugin, loading the ones that aren't loaded.
+     * Schematics that couldn't be loaded are left out.
+     *
+     * @param plugin The plugin.
+     * @return All schematics.
+     */
     public static Collection<Schematic> getSchematics(@NotNull Plugin plugin) {
-        return cache.get(plugin).values();
+        List<Schematic> schematics = new ArrayList<>();
+
+        for (String name : getSchematicNames(plugin)) {
+            Schematic schematic = getSchematic(plugin, name);
+
+            if (schematic != null) {
+                schematics.add(schematic);
+            }
+        }
+
+        return schematics;
+    }
+
+    /**
+     * Sets the maximum total weight of loaded schematics, where the weight of a schematic is its amount of blocks.
+     * When exceeded, the least recently used schematics are unloaded.
+     *
+     * @param blocks The maximum total amount of blocks. {@link Long#MAX_VALUE} to disable.
+     */
+    public static void maxWeight(long blocks) {
+        maxWeight = blocks;
+        evict();
+    }
+
+    /**
+     * Sets whether loaded schematics are only softly referenced, allowing the garbage collector to unload them.
+     * Only applies to schematics loaded after calling this.
+     *
+     * @param enabled True to use soft references, false for strong references.
+     */
+    public static void softReferences(boolean enabled) {
+        soft = enabled;
+    }
+
+    /**
+     * @return The current statistics.
+     */
+    public static Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), loadNanos.sum() / 1_000_000, evictions.sum(), weight.get());
+    }
+
+    /**
+     * Statistics of the registry.
+     *
+     * @param hits       The amount of lookups of loaded schematics.
+     * @param misses     The amount of lookups which required loading.
+     * @param loads      The amount of loaded files.
+     * @param loadMillis The total time spent loading files in ms.
+     * @param evictions  The amount of schematics unloaded by the weight limit.
+     * @param weight     The total amount of blocks of strongly referenced schematics.
+     */
+    public record Stats(long hits, long misses, long loads, long loadMillis, long evictions, long weight) {
+
+    }
+
+    private static Entry getEntry(Plugin plugin, String schematicName) {
+        Map<String, Entry> entries = cache.get(plugin);
+
+        return entries == null ? null : entries.get(schematicName);
+    }
+
+    private static synchronized ExecutorService getLoader() {
+        if (loader == null) {
+            AtomicInteger count = new AtomicInteger();
+
+            loader = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+                Thread thread = new Thread(runnable, "vilib-schematic-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return loader;
+    }
+
+    // unloads the least recently used strongly referenced schematics until the weight is below the maximum
+    private static synchronized void evict() {
+        while (weight.get() > maxWeight) {
+            Entry oldest = null;
+
+            for (Map<String, Entry> entries : cache.values()) {
+                for (Entry entry : entries.values()) {
+                    if (entry.strong != null && (oldest == null || entry.lastAccess < oldest.lastAccess)) {
+                        oldest = entry;
+                    }
+                }
+            }
+
+            if (oldest == null || !oldest.unload()) {
+                return;
+            }
+
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Unloads all schematics of a plugin when it is disabled, and stops the loader once no plugin has schematics.
+     */
+    private static final class Unloader implements EventWatcher {
+
+        private final Plugin plugin;
+
+        private Unloader(Plugin plugin) {
+            this.plugin = plugin;
+        }
+
+        @EventHandler
+        public void disable(@NotNull PluginDisableEvent event) {
+            if (event.getPlugin() != plugin) {
+                return;
+            }
+
+            Map<String, Entry> entries = cache.remove(plugin);
+            if (entries != null) {
+                entries.values().forEach(Entry::unload);
+            }
+
+            synchronized (Schematics.class) {
+                if (cache.isEmpty() && loader != null) {
+                    loader.shutdown();
+                    loader = null;
+                }
+            }
+
+            unregisterAll();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Plugin plugin;
+        private final File file;
+        private volatile Schematic strong;
+        private volatile SoftReference<Schematic> softReference;
+        private volatile long lastAccess;
+        private volatile long modified;
+        private long weight;
+
+        private Entry(Plugin plugin, File file) {
+            this.plugin = plugin;
+            this.file = file;
+        }
+
+        private Schematic getLoaded() {
+            Schematic schematic = strong;
+
+            if (schematic == null && softReference != null) {
+                schematic = softReference.get();
+            }
+            if (schematic != null) {
+                lastAccess = clock.incrementAndGet();
+            }
+
+            return schematic;
+        }
+
+        // whether this entry is for the same file, and the file hasn't changed since it was loaded
+        private boolean isCurrent(File file) {
+            return this.file.equals(file) && (modified == 0 || modified == file.lastModified());
+        }
+
+        private Schematic get() throws IOException, ClassNotFoundException {
+            Schematic schematic = getLoaded();
+
+            if (schematic != null) {
+                hits.increment();
+                return schematic;
+            }
+
+            misses.increment();
+            return load();
+        }
+
+        private Schematic load() throws IOException, ClassNotFoundException {
+            Schematic schematic;
+
+            synchronized (this) {
+                schematic = getLoaded();
+                if (schematic != null) {
+                    return schematic;
+                }
+
+                long start = System.nanoTime();
+                modified = file.lastModified();
+                schematic = Schematic.load(file, plugin);
+                loadNanos.add(System.nanoTime() - start);
+                loads.increment();
+
+                lastAccess = clock.incrementAndGet();
+                if (soft) {
+                    softReference = new SoftReference<>(schematic);
+                } else {
+                    weight = schematic.getBlocks().size();
+                    strong = schematic;
+                    Schematics.weight.addAndGet(weight);
+                }
+            }
+
+            evict();
+            return schematic;
+        }
+
+        private synchronized boolean unload() {
+            if (strong == null) {
+                return false;
+            }
+
+            strong = null;
+            Schematics.weight.addAndGet(-weight);
+            return true;
+        }
     }
-}
\ No newline at end of file
+}
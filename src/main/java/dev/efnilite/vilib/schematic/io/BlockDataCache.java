@@ -0,0 +1,122 @@
+package dev.efnilite.vilib.schematic.io;
+
+import org.bukkit.Bukkit;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Global cache of parsed {@link BlockData}, shared by all schematic loads.
+ * Schematics often share most of their block states, so every state string is only parsed once.
+ * <p>Returned instances are shared between schematics and must not be modified. Clone them before making changes.</p>
+ *
+ * @author Efnilite
+ */
+public final class BlockDataCache {
+
+    /**
+     * The minimum amount of unparsed states in a palette to parse them in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    // unknown states are cached as empty, so failing states aren't parsed again either
+    private static final Map<String, Optional<BlockData>> cache = new ConcurrentHashMap<>();
+    private static volatile boolean parallel = true;
+
+    private BlockDataCache() {
+    }
+
+    /**
+     * Returns the block data of a state, parsing it if it hasn't been parsed before.
+     *
+     * @param state The state, as returned by {@link BlockData#getAsString()}.
+     * @return The shared block data. Null if the state is unknown on this version.
+     */
+    public static @Nullable BlockData get(@NotNull String state) {
+        Optional<BlockData> data = cache.get(state);
+
+        if (data == null) {
+            data = cache.computeIfAbsent(state, BlockDataCache::parse);
+        }
+
+        return data.orElse(null);
+    }
+
+    /**
+     * Resolves all states of a palette. Large amounts of unparsed states are parsed in parallel,
+     * see {@link #parallel(boolean)}.
+     *
+     * @param states The states.
+     * @return The block data for every state. Entries are null when the state is unknown on this version.
+     */
+    public static BlockData[] resolve(@NotNull String[] states) {
+        BlockData[] palette = new BlockData[states.length];
+        IntStream indices = IntStream.range(0, states.length);
+
+        if (parallel && states.length >= PARALLEL_THRESHOLD && countUnparsed(states) >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+
+        indices.forEach(i -> palette[i] = get(states[i]));
+
+        return palette;
+    }
+
+    /**
+     * Sets whether large palettes are parsed in parallel. Enabled by default.
+     * Disable this on servers where parsing block data off the main thread isn't safe.
+     *
+     * @param enabled True to parse in parallel, false to parse on the loading thread.
+     */
+    public static void parallel(boolean enabled) {
+        parallel = enabled;
+    }
+
+    /**
+     * @return The amount of cached states.
+     */
+    public static int size() {
+        return cache.size();
+    }
+
+    /**
+     * Removes all cached states. Already loaded schematics keep their block data.
+     */
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static int countUnparsed(String[] states) {
+        int count = 0;
+
+        for (String state : states) {
+            if (!cache.containsKey(state)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static Optional<BlockData> parse(String state) {
+        try {
+            return Optional.of(Bukkit.createBlockData(state));
+        } catch (IllegalArgumentException ex) {
+            try {
+                // < 1.19 versions for spawn schematic
+                if (state.contains("leaves")) {
+                    return Optional.of(Bukkit.createBlockData(state.replaceAll(",?waterlogged=(false|true)", "")));
+                }
+            } catch (IllegalArgumentException ignored) {
+
+            }
+
+            return Optional.empty();
+        }
+    }
+}
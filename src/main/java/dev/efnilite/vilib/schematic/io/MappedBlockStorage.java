@@ -0,0 +1,55 @@
+package dev.efnilite.vilib.schematic.io;
+
+import dev.efnilite.vilib.schematic.BlockStorage;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Block storage which reads fixed-width block indices directly from a memory-mapped file.
+ * Only absolute reads are used, so the storage can be read from multiple threads.
+ *
+ * @author Efnilite
+ */
+class MappedBlockStorage extends BlockStorage {
+
+    private final ByteBuffer indices;
+    private final int indexBytes;
+    private final int size;
+
+    MappedBlockStorage(int width, int height, int length, BlockData[] palette, ByteBuffer indices, int size) {
+        super(width, height, length, palette);
+        this.indices = indices;
+        this.indexBytes = SchematicFormat.getIndexBytes(palette.length);
+        this.size = size;
+    }
+
+    @Override
+    public int get(int x, int y, int z) {
+        return SchematicFormat.readIndex(indices, linear(x, y, z), indexBytes) - 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(@NotNull Visitor visitor) {
+        int position = 0;
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    int value = SchematicFormat.readIndex(indices, position, indexBytes);
+                    position++;
+
+                    if (value != 0) {
+                        visitor.visit(x, y, z, value - 1);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dev.efnilite.vilib.schematic.io;
+
+/**
+ * The result of pasting a schematic over multiple ticks.
+ *
+ * @param blocks The amount of placed blocks.
+ * @param ticks  The amount of ticks during which blocks were placed.
+ * @param millis The amount of ms between starting and finishing the paste.
+ */
+public record PasteResult(int blocks, int ticks, long millis) {
+
+}
@@ -0,0 +1,184 @@
+package dev.efnilite.vilib.schematic.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and helpers for the binary schematic format (version 2).
+ * <p>
+ * Layout, after the magic number:
+ * <pre>
+ * byte    version
+ * byte    flags                  ({@link #FLAG_DEFLATE}, {@link #FLAG_FIXED})
+ * -- everything below is deflated when {@link #FLAG_DEFLATE} is set --
+ * varint  width, height, length   (of the bounding box of the non-empty blocks, like version 1)
+ * varint  amount of non-empty blocks
+ * varint  palette size
+ * utf     palette entries        (BlockData#getAsString)
+ * varint  width * height * length block indices in x/y/z order,
+ *         where 0 is empty and i + 1 refers to palette entry i
+ * </pre>
+ * When {@link #FLAG_FIXED} is set, block indices are big-endian values of {@link #getIndexBytes(int)} bytes instead of varints.
+ * Uncompressed files with fixed-width indices can be memory-mapped, since every position can be found without decoding.
+ *
+ * @author Efnilite
+ */
+final class SchematicFormat {
+
+    /**
+     * The magic number of version 2+ files. Version 1 files start with the Java serialization header instead.
+     */
+    static final int MAGIC = 0x56534348; // "VSCH"
+
+    /**
+     * Whether the body is deflated.
+     */
+    static final int FLAG_DEFLATE = 1;
+
+    /**
+     * Whether block indices are fixed-width.
+     */
+    static final int FLAG_FIXED = 2;
+
+    private SchematicFormat() {
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint.
+     *
+     * @param out   The output.
+     * @param value The value, must be positive.
+     */
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * @param paletteSize The size of the palette.
+     * @return The amount of bytes needed for a fixed-width block index, 1, 2 or 4.
+     */
+    static int getIndexBytes(int paletteSize) {
+        if (paletteSize <= 0xFF) {
+            return 1;
+        } else if (paletteSize <= 0xFFFF) {
+            return 2;
+        } else {
+            return 4;
+        }
+    }
+
+    /**
+     * Writes a fixed-width block index.
+     *
+     * @param out   The output.
+     * @param value The value.
+     * @param bytes The width, see {@link #getIndexBytes(int)}.
+     */
+    static void writeIndex(DataOutput out, int value, int bytes) throws IOException {
+        switch (bytes) {
+            case 1 -> out.writeByte(value);
+            case 2 -> out.writeShort(value);
+            default -> out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads a fixed-width block index.
+     *
+     * @param in    The input.
+     * @param bytes The width, see {@link #getIndexBytes(int)}.
+     * @return The value.
+     */
+    static int readIndex(DataInput in, int bytes) throws IOException {
+        return switch (bytes) {
+            case 1 -> in.readUnsignedByte();
+            case 2 -> in.readUnsignedShort();
+            default -> in.readInt();
+        };
+    }
+
+    /**
+     * Reads a fixed-width block index at an absolute position.
+     *
+     * @param buffer   The buffer.
+     * @param position The index of the block.
+     * @param bytes    The width, see {@link #getIndexBytes(int)}.
+     * @return The value.
+     */
+    static int readIndex(ByteBuffer buffer, int position, int bytes) {
+        return switch (bytes) {
+            case 1 -> buffer.get(position) & 0xFF;
+            case 2 -> buffer.getShort(position * 2) & 0xFFFF;
+            default -> buffer.getInt(position * 4);
+        };
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     *
+     * @param buffer The buffer.
+     * @return The value.
+     */
+    static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (shift > 28) {
+                throw new IOException("Varint is too long");
+            }
+
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * Reads a string in modified UTF-8, as written by {@link DataOutput#writeUTF(String)}.
+     *
+     * @param buffer The buffer.
+     * @return The string.
+     */
+    static String readUTF(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length + 2];
+
+        bytes[0] = (byte) (length >>> 8);
+        bytes[1] = (byte) length;
+        buffer.get(bytes, 2, length);
+
+        return DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     *
+     * @param in The input.
+     * @return The value.
+     */
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (shift > 28) {
+                throw new IOException("Varint is too long");
+            }
+
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
@@ -1,17 +1,23 @@
 package dev.efnilite.vilib.schematic.io;
 
+import dev.efnilite.vilib.schematic.BlockStorage;
+import dev.efnilite.vilib.util.BlockPlacer;
 import dev.efnilite.vilib.util.Colls;
+import dev.efnilite.vilib.util.Snapshots;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Directional;
 import org.bukkit.block.data.MultipleFacing;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.util.Vector;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 /**
@@ -22,6 +28,86 @@ import java.util.function.Supplier;
  */
 public class SchematicPaster {
 
+    /**
+     * Pastes a schematic with the provided block storage.
+     *
+     * @param location The smallest location.
+     * @param blocks   The blocks.
+     * @return The affected blocks.
+     */
+    public List<Block> paste(Location location, BlockStorage blocks) {
+        World world = location.getWorld();
+        BlockData[] palette = blocks.getPalette();
+        int baseX = location.getBlockX();
+        int baseY = location.getBlockY();
+        int baseZ = location.getBlockZ();
+        List<Block> affected = new ArrayList<>(blocks.size());
+
+        blocks.forEach((x, y, z, index) -> {
+            BlockData data = palette[index];
+            Block block = world.getBlockAt(baseX + x, baseY + y, baseZ + z);
+
+            if (data != null) {
+                block.setBlockData(data, false);
+            }
+
+            affected.add(block);
+        });
+
+        return affected;
+    }
+
+    /**
+     * Pastes a schematic with the provided block storage over multiple ticks.
+     * Blocks are grouped by chunk section and placed within the time budget of the placer.
+     * Must be called on the main thread.
+     *
+     * @param location The smallest location.
+     * @param blocks   The blocks.
+     * @param placer   The placer, which determines the budget per tick and progress reporting.
+     * @return A future which completes when all blocks have been placed.
+     */
+    public CompletableFuture<PasteResult> pasteAsync(Location location, BlockStorage blocks, BlockPlacer placer) {
+        return placer.place(new PasteJob(location, blocks))
+                .thenApply(job -> new PasteResult(job.getPlaced(), job.getTicks(), job.getMillis()));
+    }
+
+    /**
+     * Pastes a schematic with the provided block storage over multiple ticks, only placing blocks which differ
+     * from the blocks currently in the world. This is much cheaper than {@link #pasteAsync} when resetting
+     * a region which is mostly unchanged, since unchanged blocks cause no lighting or client updates.
+     * <p>Every tick, one strip of chunks is copied on the main thread and compared on an async thread.
+     * The differing blocks are placed afterwards, within the time budget of the placer.
+     * Changes made to the region after its strip has been compared are not detected.</p>
+     *
+     * @param location The smallest location.
+     * @param blocks   The blocks.
+     * @param placer   The placer, which determines the budget per tick and progress reporting.
+     * @return A future which completes when all differing blocks have been placed.
+     * The amount of blocks of the result is the amount of changed blocks.
+     */
+    public CompletableFuture<PasteResult> pasteDiff(Location location, BlockStorage blocks, BlockPlacer placer) {
+        long start = System.nanoTime();
+        Plugin plugin = placer.getPlugin();
+        Executor async = Snapshots.async(plugin);
+        Diff diff = new Diff(location, blocks);
+
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (int chunkX = diff.minChunkX; chunkX <= diff.maxChunkX; chunkX++) {
+            int x = chunkX;
+
+            future = future
+                    .thenCompose(ignored -> Snapshots.sync(plugin, () -> Snapshots.strip(diff.world, x, diff.minChunkZ, diff.maxChunkZ)))
+                    .thenAcceptAsync(strip -> diff.compare(x, strip), async);
+        }
+
+        return future
+                .thenCompose(ignored -> Snapshots.sync(plugin, () -> placer.place(new PasteJob(location, diff.changes.build()))))
+                .thenCompose(placing -> placing)
+                .thenApply(job -> new PasteResult(job.getPlaced(), diff.maxChunkX - diff.minChunkX + 1 + job.getTicks(),
+                        (System.nanoTime() - start) / 1_000_000));
+    }
+
     /**
      * Pastes a schematic with the provided map of offsets and BlockData.
      *
@@ -46,9 +132,11 @@ public class SchematicPaster {
      */
     public List<Block> paste(Location location, double rotation, Map<Vector, BlockData> vectorDataMap) {
         return paste(() -> Colls.thread(vectorDataMap)
-                .mapkv((vector) -> location.clone().add(round(vector.rotateAroundY(rotation))).getBlock(),
+                .mapkv((vector) -> location.clone().add(round(vector.clone().rotateAroundY(rotation))).getBlock(),
                         (data) -> {
-                            if (data instanceof Directional directional) {
+                            // palette entries are shared, so never modify them directly
+                            if (data instanceof Directional original) {
+                                Directional directional = (Directional) original.clone();
                                 directional.setFacing(getClosest(directional.getFacing().getDirection(), rotation, directional.getFaces()));
                                 return directional;
                             }
@@ -83,20 +171,166 @@ public class SchematicPaster {
     }
 
     private List<Block> paste(Supplier<Map<Block, BlockData>> blocksGetter) {
-        try {
-            Map<Block, BlockData> blocks = CompletableFuture.supplyAsync(blocksGetter).get();
+        // blocks have to be fetched on the main thread anyway, so don't bother with another thread
+        Map<Block, BlockData> blocks = blocksGetter.get();
+
+        blocks.forEach((block, data) -> {
+            if (block == null || data == null) {
+                return;
+            }
+
+            block.setBlockData(data, false);
+        });
+
+        return new ArrayList<>(blocks.keySet());
+    }
+
+    /**
+     * Compares a {@link BlockStorage} with the world, one strip of chunks at a time, and collects the differing blocks.
+     */
+    private static final class Diff {
 
-            blocks.forEach((block, data) -> {
-                if (block == null || data == null) {
-                    return;
+        private final World world;
+        private final BlockStorage blocks;
+        private final BlockData[] palette;
+        private final int baseX;
+        private final int baseY;
+        private final int baseZ;
+        private final int minChunkX;
+        private final int maxChunkX;
+        private final int minChunkZ;
+        private final int maxChunkZ;
+        private final BlockStorage.Builder changes;
+
+        private Diff(Location location, BlockStorage blocks) {
+            this.world = location.getWorld();
+            this.blocks = blocks;
+            this.palette = blocks.getPalette();
+            this.baseX = location.getBlockX();
+            this.baseY = location.getBlockY();
+            this.baseZ = location.getBlockZ();
+            this.minChunkX = baseX >> 4;
+            this.maxChunkX = (baseX + blocks.getWidth() - 1) >> 4;
+            this.minChunkZ = baseZ >> 4;
+            this.maxChunkZ = (baseZ + blocks.getLength() - 1) >> 4;
+
+            // the amount of changes is unknown up front, so this starts out as sparse storage which grows as needed
+            this.changes = BlockStorage.builder(blocks.getWidth(), blocks.getHeight(), blocks.getLength(), palette, 0);
+        }
+
+        // compares all x offsets within a strip, in ascending order so the builder stays sorted
+        private void compare(int chunkX, ChunkSnapshot[] strip) {
+            int fromX = Math.max(0, (chunkX << 4) - baseX);
+            int toX = Math.min(blocks.getWidth() - 1, (chunkX << 4) + 15 - baseX);
+
+            for (int x = fromX; x <= toX; x++) {
+                int worldX = (baseX + x) & 15;
+
+                for (int y = 0; y < blocks.getHeight(); y++) {
+                    for (int z = 0; z < blocks.getLength(); z++) {
+                        int index = blocks.get(x, y, z);
+                        if (index == BlockStorage.EMPTY || palette[index] == null) {
+                            continue;
+                        }
+
+                        ChunkSnapshot snapshot = strip[((baseZ + z) >> 4) - minChunkZ];
+                        int worldZ = (baseZ + z) & 15;
+
+                        // comparing types first avoids creating block data for most changed blocks
+                        if (snapshot.getBlockType(worldX, baseY + y, worldZ) != palette[index].getMaterial()
+                                || !snapshot.getBlockData(worldX, baseY + y, worldZ).equals(palette[index])) {
+                            changes.set(x, y, z, index);
+                        }
+                    }
                 }
+            }
+        }
+    }
 
-                block.setBlockData(data, false);
+    /**
+     * Places the blocks of a {@link BlockStorage} chunk section by chunk section.
+     */
+    static class PasteJob extends BlockPlacer.Job {
+
+        private final World world;
+        private final int baseX;
+        private final int baseY;
+        private final int baseZ;
+        private final int height;
+        private final int length;
+        private final BlockData[] palette;
+        private final int[] positions;
+        private final int[] indices;
+        private int cursor;
+
+        PasteJob(Location location, BlockStorage blocks) {
+            this.world = location.getWorld();
+            this.baseX = location.getBlockX();
+            this.baseY = location.getBlockY();
+            this.baseZ = location.getBlockZ();
+            this.height = blocks.getHeight();
+            this.length = blocks.getLength();
+            this.palette = blocks.getPalette();
+            this.positions = new int[blocks.size()];
+            this.indices = new int[blocks.size()];
+
+            if (blocks.size() == 0) {
+                return;
+            }
+
+            // counting sort by chunk section, which keeps the x/y/z order within each section
+            int minChunkX = baseX >> 4;
+            int minChunkZ = baseZ >> 4;
+            int minSection = baseY >> 4;
+            int chunksZ = ((baseZ + length - 1) >> 4) - minChunkZ + 1;
+            int chunksX = ((baseX + blocks.getWidth() - 1) >> 4) - minChunkX + 1;
+            int sections = ((baseY + height - 1) >> 4) - minSection + 1;
+            int[] starts = new int[chunksX * chunksZ * sections + 1];
+
+            blocks.forEach((x, y, z, index) -> starts[getSection(x, y, z, minChunkX, minChunkZ, minSection, chunksZ, sections) + 1]++);
+
+            for (int i = 1; i < starts.length; i++) {
+                starts[i] += starts[i - 1];
+            }
+
+            blocks.forEach((x, y, z, index) -> {
+                int slot = starts[getSection(x, y, z, minChunkX, minChunkZ, minSection, chunksZ, sections)]++;
+
+                positions[slot] = (x * height + y) * length + z;
+                indices[slot] = index;
             });
+        }
+
+        // returns the index of the chunk section of an offset, ordered by chunk first
+        private int getSection(int x, int y, int z, int minChunkX, int minChunkZ, int minSection, int chunksZ, int sections) {
+            int chunk = (((baseX + x) >> 4) - minChunkX) * chunksZ + ((baseZ + z) >> 4) - minChunkZ;
+
+            return chunk * sections + ((baseY + y) >> 4) - minSection;
+        }
+
+        @Override
+        protected boolean placeNext() {
+            if (cursor == positions.length) {
+                return false;
+            }
+
+            int position = positions[cursor];
+            BlockData data = palette[indices[cursor]];
+            cursor++;
+
+            if (data != null) {
+                int x = position / (height * length);
+                int rest = position - x * height * length;
+
+                set(world.getBlockAt(baseX + x, baseY + rest / length, baseZ + rest % length), data, false);
+            }
+
+            return true;
+        }
 
-            return new ArrayList<>(blocks.keySet());
-        } catch (InterruptedException | ExecutionException ex) {
-            return Collections.emptyList();
+        @Override
+        public int getTotal() {
+            return positions.length;
         }
     }
 }
\ No newline at end of file
@@ -1,13 +1,16 @@
 package dev.efnilite.vilib.schematic.io;
 
-import dev.efnilite.vilib.util.Colls;
-import org.bukkit.Bukkit;
+import dev.efnilite.vilib.schematic.BlockStorage;
+import dev.efnilite.vilib.schematic.Schematic;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.util.Vector;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Schematic reading handler.
@@ -18,42 +21,174 @@ import java.util.Map;
 public class SchematicReader {
 
     /**
+     * Reads a schematic file. Both the version 1 (Java serialization) and version 2 (binary) format are supported.
+     * Uncompressed files with fixed-width block indices are memory-mapped instead of read,
+     * see {@link SchematicWriter.Encoding#MAPPED}.
+     *
      * @param file The file.
-     * @return A new {@link dev.efnilite.vilib.schematic.Schematic} instance based on the read blocks.
+     * @return The read blocks.
      */
-    @SuppressWarnings("unchecked")
-    public Map<Vector, BlockData> read(File file, Plugin plugin) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream stream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
-            var version = (int) stream.readObject();
-            var palette = (Map<String, Integer>) stream.readObject();
-            var offsets = (Map<String, Integer>) stream.readObject();
-
-            Map<Integer, BlockData> paletteRef = Colls.thread(palette).inverse().mapv((k, ov) -> {
-                try {
-                    return Bukkit.createBlockData(ov);
-                } catch (IllegalArgumentException ex) {
-                    try {
-                        // < 1.19 versions for spawn schematic
-                        if (ov.contains("leaves")) {
-                            return Bukkit.createBlockData(ov.replaceAll(",?waterlogged=(false|true)", ""));
+    public BlockStorage read(File file, Plugin plugin) throws IOException, ClassNotFoundException {
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            DataInputStream data = new DataInputStream(stream);
+
+            stream.mark(Integer.BYTES);
+            if (data.readInt() != SchematicFormat.MAGIC) {
+                // version 1 files start with the serialization header
+                stream.reset();
+                return readSerialized(stream, file, plugin);
+            }
+
+            int version = data.readUnsignedByte();
+            if (version > Schematic.VERSION) {
+                throw new IOException("Unsupported schematic version %d in %s".formatted(version, file.getName()));
+            }
+
+            int flags = data.readUnsignedByte();
+            if ((flags & SchematicFormat.FLAG_FIXED) != 0 && (flags & SchematicFormat.FLAG_DEFLATE) == 0) {
+                BlockStorage mapped = map(file, plugin);
+
+                if (mapped != null) {
+                    return mapped;
+                }
+            }
+
+            return readBinary(data, flags, file, plugin);
+        }
+    }
+
+    // reads version 2+ files, assumes the header has already been read
+    private BlockStorage readBinary(DataInputStream stream, int flags, File file, Plugin plugin) throws IOException {
+        InputStream body = (flags & SchematicFormat.FLAG_DEFLATE) != 0
+                ? new BufferedInputStream(new InflaterInputStream(stream))
+                : stream;
+
+        try (DataInputStream in = new DataInputStream(body)) {
+            int width = SchematicFormat.readVarInt(in);
+            int height = SchematicFormat.readVarInt(in);
+            int length = SchematicFormat.readVarInt(in);
+            int count = SchematicFormat.readVarInt(in);
+
+            String[] states = new String[SchematicFormat.readVarInt(in)];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = in.readUTF();
+            }
+            BlockData[] palette = resolve(states, file, plugin);
+
+            boolean fixed = (flags & SchematicFormat.FLAG_FIXED) != 0;
+            int indexBytes = SchematicFormat.getIndexBytes(palette.length);
+
+            BlockStorage.Builder builder = BlockStorage.builder(width, height, length, palette, count);
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    for (int z = 0; z < length; z++) {
+                        int index = fixed ? SchematicFormat.readIndex(in, indexBytes) : SchematicFormat.readVarInt(in);
+
+                        if (index == 0) {
+                            continue;
                         }
-                    } catch (IllegalArgumentException ignored) {
 
+                        builder.set(x, y, z, index - 1);
                     }
+                }
+            }
 
-                    plugin.getLogger().warning("Unknown block data %s in %s".formatted(ov, file.getName()));
+            return builder.build();
+        }
+    }
 
-                    return null;
-                }
-            }).get();
+    // maps an uncompressed file with fixed-width indices, returns null if the indices don't fit in a single mapping
+    private BlockStorage map(File file, Plugin plugin) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(Integer.BYTES + 2); // magic, version and flags
+
+            int width = SchematicFormat.readVarInt(buffer);
+            int height = SchematicFormat.readVarInt(buffer);
+            int length = SchematicFormat.readVarInt(buffer);
+            int count = SchematicFormat.readVarInt(buffer);
+
+            String[] states = new String[SchematicFormat.readVarInt(buffer)];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = SchematicFormat.readUTF(buffer);
+            }
+            BlockData[] palette = resolve(states, file, plugin);
 
-            // create final map by parse Map<String, Object> -> Vector and applying possible State
-            return Colls.thread(offsets).mapkv(this::fromString, paletteRef::get).get();
+            long bytes = (long) width * height * length * SchematicFormat.getIndexBytes(palette.length);
+            if (buffer.remaining() < bytes) {
+                throw new EOFException("Missing block indices in %s".formatted(file.getName()));
+            }
+
+            return new MappedBlockStorage(width, height, length, palette, buffer.slice(), count);
+        }
+    }
+
+    // reads version 1 files
+    @SuppressWarnings("unchecked")
+    private BlockStorage readSerialized(InputStream input, File file, Plugin plugin) throws IOException, ClassNotFoundException {
+        ObjectInputStream stream = new ObjectInputStream(input);
+
+        var version = (int) stream.readObject();
+        var palette = (Map<String, Integer>) stream.readObject();
+        var offsets = (Map<String, Integer>) stream.readObject();
+
+        String[] states = new String[palette.size()];
+        palette.forEach((state, index) -> states[index] = state);
+        BlockData[] paletteRef = resolve(states, file, plugin);
+
+        // offsets are stored as Vector#toString, so parse them once and find the bounding box
+        int[][] positions = new int[offsets.size()][];
+        int[] indices = new int[offsets.size()];
+        int[] min = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        int[] max = {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+            int[] position = fromString(entry.getKey());
+
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], position[axis]);
+                max[axis] = Math.max(max[axis], position[axis]);
+            }
+
+            positions[i] = position;
+            indices[i] = entry.getValue();
+            i++;
         }
+
+        if (positions.length == 0) {
+            return BlockStorage.builder(0, 0, 0, paletteRef, 0).build();
+        }
+
+        BlockStorage.Builder builder = BlockStorage.builder(max[0] - min[0] + 1, max[1] - min[1] + 1, max[2] - min[2] + 1,
+                paletteRef, positions.length);
+        for (int j = 0; j < positions.length; j++) {
+            builder.set(positions[j][0] - min[0], positions[j][1] - min[1], positions[j][2] - min[2], indices[j]);
+        }
+
+        return builder.build();
+    }
+
+    // resolves the palette through the shared cache, so states shared between schematics are only parsed once
+    private BlockData[] resolve(String[] states, File file, Plugin plugin) {
+        BlockData[] palette = BlockDataCache.resolve(states);
+
+        for (int i = 0; i < palette.length; i++) {
+            if (palette[i] == null) {
+                plugin.getLogger().warning("Unknown block data %s in %s".formatted(states[i], file.getName()));
+            }
+        }
+
+        return palette;
     }
 
-    private Vector fromString(String string) {
+    private int[] fromString(String string) {
         String[] parts = string.split(",");
-        return new Vector(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+        return new int[]{(int) Double.parseDouble(parts[0]), (int) Double.parseDouble(parts[1]), (int) Double.parseDouble(parts[2])};
     }
 }
@@ -2,16 +2,23 @@ package dev.efnilite.vilib.schematic.io;
 
 import dev.efnilite.vilib.schematic.Schematic;
 import dev.efnilite.vilib.util.Locations;
+import dev.efnilite.vilib.util.Region;
+import dev.efnilite.vilib.util.Snapshots;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.Block;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.plugin.Plugin;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Schematic writing handler.
@@ -22,81 +29,259 @@ import java.util.Map;
 public class SchematicWriter {
 
     /**
-     * Saves blocks to the specified file.
+     * How block indices are stored in version 2+ files.
+     */
+    public enum Encoding {
+
+        /**
+         * Deflated varints. The smallest files.
+         */
+        COMPRESSED,
+
+        /**
+         * Uncompressed varints.
+         */
+        VARINT,
+
+        /**
+         * Uncompressed fixed-width indices, which are memory-mapped when read.
+         * The largest files, but the fastest to read and without copying, which suits very large schematics.
+         */
+        MAPPED
+    }
+
+    /**
+     * Saves blocks to the specified file in the format of {@link Schematic#VERSION}. The file is compressed.
      *
      * @param file The file.
      * @param pos1 The first position.
      * @param pos2 The second position.
      */
     public void save(File file, Location pos1, Location pos2, Plugin plugin) {
-        List<Block> blocks = getBlocks(Locations.min(pos1, pos2), Locations.max(pos1, pos2));
+        save(file, pos1, pos2, plugin, Encoding.COMPRESSED);
+    }
+
+    /**
+     * Saves blocks to the specified file in the format of {@link Schematic#VERSION}.
+     *
+     * @param file     The file.
+     * @param pos1     The first position.
+     * @param pos2     The second position.
+     * @param compress Whether to deflate the file.
+     */
+    public void save(File file, Location pos1, Location pos2, Plugin plugin, boolean compress) {
+        save(file, pos1, pos2, plugin, compress ? Encoding.COMPRESSED : Encoding.VARINT);
+    }
+
+    /**
+     * Saves blocks to the specified file in the format of {@link Schematic#VERSION}.
+     * On the main thread, the world is read directly. On other threads, this waits for {@link #saveAsync}.
+     *
+     * @param file     The file.
+     * @param pos1     The first position.
+     * @param pos2     The second position.
+     * @param encoding How block indices are stored.
+     */
+    public void save(File file, Location pos1, Location pos2, Plugin plugin, Encoding encoding) {
+        if (!Bukkit.isPrimaryThread()) {
+            try {
+                saveAsync(file, pos1, pos2, plugin, encoding).join();
+            } catch (CompletionException ex) {
+                ex.printStackTrace();
+            }
+            return;
+        }
 
-        Map<String, Integer> palette = getPalette(blocks);
-        Map<String, Integer> offsetData = getOffsetData(blocks, palette);
+        try (Capture capture = new Capture(file, Locations.min(pos1, pos2), Locations.max(pos1, pos2))) {
+            for (int chunkX = capture.region.getMinChunkX(); chunkX <= capture.region.getMaxChunkX(); chunkX++) {
+                capture.encode(chunkX, capture.snapshot(chunkX));
+            }
 
-        // write to file
-        try (ObjectOutputStream stream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
-            stream.writeObject(Schematic.VERSION);
-            stream.writeObject(palette);
-            stream.writeObject(offsetData);
-            stream.flush();
+            capture.finish(encoding);
         } catch (IOException ex) {
             ex.printStackTrace();
         }
     }
 
+    /**
+     * Saves blocks to the specified file in the format of {@link Schematic#VERSION} without blocking the main thread.
+     * Every tick, one strip of chunks of the selection is copied as {@link ChunkSnapshot}s on the main thread,
+     * which is then encoded on an async thread and streamed to disk.
+     * Only the strip which is being encoded and the palette are held in memory, regardless of the size of the selection.
+     *
+     * @param file     The file.
+     * @param pos1     The first position.
+     * @param pos2     The second position.
+     * @param plugin   The plugin to register the tasks with.
+     * @param encoding How block indices are stored.
+     * @return A future which completes when the file has been written.
+     */
+    public CompletableFuture<Void> saveAsync(File file, Location pos1, Location pos2, Plugin plugin, Encoding encoding) {
+        Capture capture;
+        try {
+            capture = new Capture(file, Locations.min(pos1, pos2), Locations.max(pos1, pos2));
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        Executor async = Snapshots.async(plugin);
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
 
-    // returns all blocks between the min location (minL) and max location (maxL)
-    private List<Block> getBlocks(Location minL, Location maxL) {
-        List<Block> blocks = new ArrayList<>();
-        Location location = new Location(minL.getWorld() == null ? maxL.getWorld() : minL.getWorld(), 0, 0, 0);
+        for (int chunkX = capture.region.getMinChunkX(); chunkX <= capture.region.getMaxChunkX(); chunkX++) {
+            int x = chunkX;
 
-        for (int x = minL.getBlockX(); x <= maxL.getBlockX(); x++) {
-            for (int y = minL.getBlockY(); y <= maxL.getBlockY(); y++) {
-                for (int z = minL.getBlockZ(); z <= maxL.getBlockZ(); z++) {
-                    location.setX(x);
-                    location.setY(y);
-                    location.setZ(z);
+            future = future
+                    .thenCompose(ignored -> Snapshots.sync(plugin, () -> capture.snapshot(x)))
+                    .thenAcceptAsync(strip -> {
+                        try {
+                            capture.encode(x, strip);
+                        } catch (IOException ex) {
+                            throw new CompletionException(ex);
+                        }
+                    }, async);
+        }
 
-                    if (location.getBlock().getType() == Material.AIR) {
-                        continue;
+        return future
+                .thenRunAsync(() -> {
+                    try {
+                        capture.finish(encoding);
+                    } catch (IOException ex) {
+                        throw new CompletionException(ex);
                     }
+                }, async)
+                .whenComplete((ignored, ex) -> capture.close());
+    }
 
-                    blocks.add(location.getBlock());
+    /**
+     * Encodes a selection in the version 2+ format, see {@link SchematicFormat}, one strip of chunks at a time.
+     * Strips are one chunk wide over the x-axis and span the selection over the z-axis, so the x/y/z order of
+     * the indices can be written without going back. Indices are written to a temporary file while the palette is built,
+     * since the palette has to precede them.
+     * <p>Like version 1, the written box is the bounding box of the non-air blocks, so offsets are relative to
+     * the minimum block instead of the minimum corner of the selection, and both versions paste at the same position.</p>
+     */
+    private static final class Capture implements Closeable {
+
+        private final File file;
+        private final World world;
+        private final Region region;
+        private final Map<BlockData, Integer> palette = new LinkedHashMap<>();
+        private final File temp;
+        private final DataOutputStream indices;
+        private int count;
+        private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+        private Capture(File file, Location min, Location max) throws IOException {
+            this.file = file;
+            this.world = min.getWorld() == null ? max.getWorld() : min.getWorld();
+            this.region = Region.of(min, max);
+
+            this.temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+            this.indices = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        }
+
+        // copies all chunks of a strip, must be called on the main thread
+        private ChunkSnapshot[] snapshot(int chunkX) {
+            return Snapshots.strip(world, chunkX, region.getMinChunkZ(), region.getMaxChunkZ());
+        }
+
+        // writes the indices of all x values within a strip, may be called on any thread
+        private void encode(int chunkX, ChunkSnapshot[] strip) throws IOException {
+            int fromX = Math.max(region.getMinX(), chunkX << 4);
+            int toX = Math.min(region.getMaxX(), (chunkX << 4) + 15);
+
+            for (int x = fromX; x <= toX; x++) {
+                for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+                    for (int z = region.getMinZ(); z <= region.getMaxZ(); z++) {
+                        ChunkSnapshot snapshot = strip[(z >> 4) - region.getMinChunkZ()];
+
+                        if (snapshot.getBlockType(x & 15, y, z & 15) == Material.AIR) {
+                            SchematicFormat.writeVarInt(indices, 0);
+                            continue;
+                        }
+
+                        Integer index = palette.putIfAbsent(snapshot.getBlockData(x & 15, y, z & 15), palette.size());
+                        SchematicFormat.writeVarInt(indices, (index == null ? palette.size() - 1 : index) + 1);
+                        count++;
+
+                        minX = Math.min(minX, x);
+                        minY = Math.min(minY, y);
+                        minZ = Math.min(minZ, z);
+                        maxX = Math.max(maxX, x);
+                        maxY = Math.max(maxY, y);
+                        maxZ = Math.max(maxZ, z);
+                    }
                 }
             }
         }
-        return blocks;
-    }
 
+        // writes the header and palette, followed by the indices within the bounding box of the non-air blocks
+        private void finish(Encoding encoding) throws IOException {
+            indices.close();
 
-    // returns block palette where ids are used instead of the full blockdata to reduce file space
-    private Map<String, Integer> getPalette(List<Block> blocks) {
-        Map<String, Integer> palette = new HashMap<>();
+            int width = count == 0 ? 0 : maxX - minX + 1;
+            int height = count == 0 ? 0 : maxY - minY + 1;
+            int length = count == 0 ? 0 : maxZ - minZ + 1;
+            boolean compress = encoding == Encoding.COMPRESSED;
+            boolean fixed = encoding == Encoding.MAPPED;
 
-        blocks.stream()
-            .map(block -> block.getBlockData().getAsString())
-            .distinct()
-            .forEach(datum -> palette.put(datum, palette.size()));
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                stream.writeInt(SchematicFormat.MAGIC);
+                stream.writeByte(Schematic.VERSION);
+                stream.writeByte((compress ? SchematicFormat.FLAG_DEFLATE : 0) | (fixed ? SchematicFormat.FLAG_FIXED : 0));
 
-        return palette;
-    }
+                DataOutputStream body = compress
+                        ? new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(stream)))
+                        : stream;
+
+                SchematicFormat.writeVarInt(body, width);
+                SchematicFormat.writeVarInt(body, height);
+                SchematicFormat.writeVarInt(body, length);
+                SchematicFormat.writeVarInt(body, count);
+                SchematicFormat.writeVarInt(body, palette.size());
+                for (BlockData data : palette.keySet()) {
+                    body.writeUTF(data.getAsString());
+                }
 
-    // returns the offset data, where each block offset (position relative to minimum location)
-    // is mapped to the data at that position.
-    // the first item in the array is the generic BlockData of that block.
-    // the second item in the array is the special data of that block, as encoded by the State instances.
-    private Map<String, Integer> getOffsetData(List<Block> blocks, Map<String, Integer> palette) {
-        List<Location> locations = blocks.stream().map(Block::getLocation).toList();
-        Location min = locations.stream().reduce(Locations::min).orElseThrow();
+                // the fixed width is only known once the palette is complete
+                int indexBytes = SchematicFormat.getIndexBytes(palette.size());
 
-        Map<String, Integer> offsetData = new HashMap<>();
+                try (DataInputStream varints = new DataInputStream(new BufferedInputStream(new FileInputStream(temp)))) {
+                    for (int x = region.getMinX(); x <= region.getMaxX(); x++) {
+                        for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+                            for (int z = region.getMinZ(); z <= region.getMaxZ(); z++) {
+                                int index = SchematicFormat.readVarInt(varints);
 
-        for (Location loc : locations) {
-            offsetData.put(loc.clone().subtract(min).toVector().toString(),
-                    palette.get(loc.clone().getBlock().getBlockData().getAsString()));
+                                if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+                                    continue;
+                                }
+
+                                if (fixed) {
+                                    SchematicFormat.writeIndex(body, index, indexBytes);
+                                } else {
+                                    SchematicFormat.writeVarInt(body, index);
+                                }
+                            }
+                        }
+                    }
+                }
+
+                body.close();
+            }
         }
 
-        return offsetData;
+        @Override
+        public void close() {
+            try {
+                indices.close();
+            } catch (IOException ignored) {
+                // already closed or never written to, the file is deleted regardless
+            }
+
+            if (!temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
     }
 }
@@ -0,0 +1,176 @@
+package dev.efnilite.vilib.util;
+
+import dev.efnilite.vilib.event.EventWatcher;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Keeps count of the blocks in a region which match a predicate.
+ * After the initial count, the count is updated from block place and break events instead of scanning the region again.
+ * Other changes, like explosions, pistons or plugins setting blocks, aren't tracked, so call {@link #refresh()} after those.
+ * Blocks placed and broken while refreshing are counted as well, see {@link #refresh()}.
+ * Call {@link #unregisterAll()} when the count is no longer needed.
+ *
+ * @author Efnilite
+ * @see Cuboid#track(Location, Location, Plugin, Predicate)
+ */
+public class BlockCounter implements EventWatcher {
+
+    private static final BlockData AIR = Bukkit.createBlockData(Material.AIR);
+
+    private final Location pos1;
+    private final Location pos2;
+    private final Plugin plugin;
+    private final Predicate<BlockData> predicate;
+    private final World world;
+    private final Region region;
+    private final AtomicLong count = new AtomicLong();
+    private Refresh refresh;
+
+    BlockCounter(@NotNull Location pos1, @NotNull Location pos2, @NotNull Plugin plugin, @NotNull Predicate<BlockData> predicate) {
+        this.pos1 = pos1;
+        this.pos2 = pos2;
+        this.plugin = plugin;
+        this.predicate = predicate;
+        this.world = pos1.getWorld() == null ? pos2.getWorld() : pos1.getWorld();
+        this.region = Region.of(pos1, pos2);
+    }
+
+    /**
+     * Counts all blocks in the region again. Must be called on the main thread.
+     * Chunks are copied and counted as described in {@link Snapshots}. Blocks placed or broken while refreshing
+     * are added to the new count when their chunk was copied before the change, since the copy doesn't contain them.
+     * Calling this while refreshing returns the running refresh.
+     *
+     * @return A future which completes with this counter when the region has been counted.
+     */
+    public CompletableFuture<BlockCounter> refresh() {
+        if (refresh != null) {
+            return refresh.future;
+        }
+
+        Refresh current = new Refresh(region.getMinChunkX() - 1);
+        refresh = current;
+
+        Executor async = Snapshots.async(plugin);
+        LongAdder counted = new LongAdder();
+        CompletableFuture<?>[] strips = new CompletableFuture[region.getMaxChunkX() - region.getMinChunkX() + 1];
+        CompletableFuture<ChunkSnapshot[]> snapshot = CompletableFuture.completedFuture(null);
+
+        for (int chunkX = region.getMinChunkX(); chunkX <= region.getMaxChunkX(); chunkX++) {
+            int x = chunkX;
+
+            // strips are copied in order, so every strip up to the last copied one no longer sees changes
+            snapshot = snapshot.thenCompose(ignored -> Snapshots.sync(plugin, () -> {
+                ChunkSnapshot[] strip = Snapshots.strip(world, x, region.getMinChunkZ(), region.getMaxChunkZ());
+                current.copied = x;
+                return strip;
+            }));
+            strips[x - region.getMinChunkX()] = snapshot.thenAcceptAsync(strip -> counted.add(count(x, strip)), async);
+        }
+
+        current.future = CompletableFuture.allOf(strips).handle((ignored, ex) -> ex).thenCompose(ex -> Snapshots.sync(plugin, () -> {
+            refresh = null;
+
+            if (ex != null) {
+                throw new CompletionException(ex);
+            }
+
+            count.set(counted.sum() + current.changes);
+            return this;
+        }));
+        return current.future;
+    }
+
+    // counts the matching blocks of the region within a strip
+    private long count(int chunkX, ChunkSnapshot[] strip) {
+        long matching = 0;
+
+        for (int x = Math.max(region.getMinX(), chunkX << 4); x <= Math.min(region.getMaxX(), (chunkX << 4) + 15); x++) {
+            for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+                for (int z = region.getMinZ(); z <= region.getMaxZ(); z++) {
+                    if (predicate.test(strip[(z >> 4) - region.getMinChunkZ()].getBlockData(x & 15, y, z & 15))) {
+                        matching++;
+                    }
+                }
+            }
+        }
+
+        return matching;
+    }
+
+    /**
+     * @return The amount of blocks which match the predicate.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void place(BlockPlaceEvent event) {
+        Block block = event.getBlockPlaced();
+
+        if (isTracked(block)) {
+            update(block, event.getBlockReplacedState().getBlockData(), block.getBlockData());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void breakBlock(BlockBreakEvent event) {
+        Block block = event.getBlock();
+
+        if (isTracked(block)) {
+            update(block, block.getBlockData(), AIR);
+        }
+    }
+
+    private boolean isTracked(Block block) {
+        return block.getWorld() == world && region.contains(block.getX(), block.getY(), block.getZ());
+    }
+
+    private void update(Block block, BlockData from, BlockData to) {
+        int change = (predicate.test(to) ? 1 : 0) - (predicate.test(from) ? 1 : 0);
+        if (change == 0) {
+            return;
+        }
+
+        count.addAndGet(change);
+
+        // changes to strips which haven't been copied yet are counted by the refresh itself
+        if (refresh != null && block.getX() >> 4 <= refresh.copied) {
+            refresh.changes += change;
+        }
+    }
+
+    /**
+     * A running refresh, with the changes it has to add to its count. Only used on the main thread.
+     */
+    private static final class Refresh {
+
+        private int copied;
+        private long changes;
+        private CompletableFuture<BlockCounter> future;
+
+        private Refresh(int copied) {
+            this.copied = copied;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package dev.efnilite.vilib.util;
+
+import dev.efnilite.vilib.event.EventWatcher;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Places blocks over multiple ticks. Instead of a fixed amount of changes per tick, a time budget is spent every tick.
+ * This budget shrinks as the server gets busier, based on {@link Ticks#getMspt()}.
+ * <p>All jobs share a single task and a single budget per tick, which is split evenly between the running jobs.
+ * Every job is limited to the budget of its own placer, and time left over by one job goes to the next.
+ * The chunk a job is placing in is kept loaded with a plugin chunk ticket, which moves along as the job moves to the next chunk.</p>
+ * <p>Example:</p>
+ * <blockquote><code>BlockPlacer.create(plugin).budget(5).progress((done, total) -> ...).place(job)</code></blockquote>
+ *
+ * @author Efnilite
+ */
+public class BlockPlacer {
+
+    /**
+     * The default maximum amount of ms spent placing blocks per tick.
+     */
+    public static final double DEFAULT_BUDGET_MS = 10;
+
+    /**
+     * The minimum amount of ms spent placing blocks per tick, to ensure progress on overloaded servers.
+     */
+    public static final double MIN_BUDGET_MS = 1;
+
+    /**
+     * The amount of ms per tick that is left for the rest of the server.
+     */
+    private static final double RESERVE_MS = 5;
+
+    /**
+     * The amount of blocks placed between checking the time.
+     */
+    private static final int CHECK_INTERVAL = 32;
+
+    private static final List<Entry> active = new ArrayList<>();
+    private static final Set<Plugin> watched = new HashSet<>();
+    private static final Map<Ticket, Integer> tickets = new HashMap<>();
+    private static BukkitTask task;
+    private static Plugin owner;
+    private static double spent = 0;
+    private static int turn = 0;
+
+    private final Plugin plugin;
+    private double budget = DEFAULT_BUDGET_MS;
+    private BiConsumer<Integer, Integer> onProgress;
+    private Journal journal;
+
+    public BlockPlacer(@NotNull Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Returns a new BlockPlacer instance.
+     *
+     * @param plugin The plugin which to register the placing task with.
+     * @return the created BlockPlacer instance
+     */
+    public static BlockPlacer create(@NotNull Plugin plugin) {
+        return new BlockPlacer(plugin);
+    }
+
+    /**
+     * Sets the maximum amount of ms spent placing blocks per tick.
+     *
+     * @param ms The maximum budget in ms.
+     * @return the instance of this class
+     */
+    public BlockPlacer budget(double ms) {
+        if (ms < MIN_BUDGET_MS) {
+            throw new IllegalArgumentException("Budget must be at least %s ms".formatted(MIN_BUDGET_MS));
+        }
+
+        this.budget = ms;
+        return this;
+    }
+
+    /**
+     * Sets what happens after every tick in which blocks were placed.
+     *
+     * @param onProgress The consumer, with the amount of done and total steps, see {@link Job#getTotal()}.
+     * @return the instance of this class
+     */
+    public BlockPlacer progress(@Nullable BiConsumer<Integer, Integer> onProgress) {
+        this.onProgress = onProgress;
+        return this;
+    }
+
+    /**
+     * Sets the journal which records the prior data of every block placed by jobs of this placer,
+     * so they can be restored with {@link Journal#restore(BlockPlacer)}.
+     *
+     * @param journal The journal, or null to not record.
+     * @return the instance of this class
+     */
+    public BlockPlacer journal(@Nullable Journal journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * Starts placing the blocks of the job. Must be called on the main thread.
+     *
+     * @param job The job.
+     * @param <J> The job type.
+     * @return A future which completes with the job when all blocks have been placed.
+     */
+    public <J extends Job> CompletableFuture<J> place(@NotNull J job) {
+        CompletableFuture<J> future = new CompletableFuture<>();
+
+        job.start = System.nanoTime();
+        job.journal = journal;
+        job.plugin = plugin;
+        active.add(new Entry(this, job, future));
+
+        if (watched.add(plugin)) {
+            new Disabler(plugin).register(plugin);
+        }
+        if (task == null || task.isCancelled()) {
+            start(plugin);
+        }
+
+        return future;
+    }
+
+    // the placing task and the tick sampler only run while there are jobs, registered with the plugin of a job
+    private static void start(Plugin plugin) {
+        owner = plugin;
+        Ticks.init(plugin);
+        task = Task.create(plugin).repeat(1).execute(BlockPlacer::tick).run();
+    }
+
+    private static void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        owner = null;
+        Ticks.stop();
+    }
+
+    /**
+     * @return The amount of jobs which are being placed.
+     */
+    public static int getActiveJobs() {
+        return active.size();
+    }
+
+    // gives every job an equal part of what's left of the tick budget, starting at a different job every tick
+    private static void tick() {
+        if (active.isEmpty()) {
+            stop();
+            return;
+        }
+
+        long start = System.nanoTime();
+        double max = 0;
+        for (Entry entry : active) {
+            max = Math.max(max, entry.placer.budget);
+        }
+        long deadline = start + (long) (getBudget(max, spent) * 1_000_000);
+
+        int count = active.size();
+        int first = Math.floorMod(turn++, count);
+        List<Entry> finished = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            Entry entry = active.get((first + i) % count);
+            long now = System.nanoTime();
+            long share = Math.min((deadline - now) / (count - i), (long) (entry.placer.budget * 1_000_000));
+
+            if (entry.run(now + share)) {
+                finished.add(entry);
+            }
+        }
+
+        // complete after removing, so callbacks which start new jobs don't affect this tick
+        active.removeAll(finished);
+        for (Entry entry : finished) {
+            entry.complete();
+        }
+
+        spent = (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    /**
+     * @return The plugin which placing tasks are registered with.
+     */
+    public Plugin getPlugin() {
+        return plugin;
+    }
+
+    // the budget is what's left of the tick after the rest of the server, capped by the configured budget
+    private static double getBudget(double budget, double spentLastTick) {
+        double mspt = Ticks.getMspt();
+        double spare;
+
+        if (Ticks.isReported()) {
+            spare = Ticks.TICK_MS - (mspt - spentLastTick) - RESERVE_MS;
+        } else {
+            // only overruns can be measured, so shrink by the amount of ms the server is behind
+            spare = budget - Math.max(0, mspt - Ticks.TICK_MS);
+        }
+
+        return Math.max(MIN_BUDGET_MS, Math.min(budget, spare));
+    }
+
+    /**
+     * A job which is being placed, with the placer that started it.
+     */
+    private static final class Entry {
+
+        private final BlockPlacer placer;
+        private final Job job;
+        private final CompletableFuture<? super Job> future;
+        private Exception exception;
+
+        @SuppressWarnings("unchecked")
+        private <J extends Job> Entry(BlockPlacer placer, J job, CompletableFuture<J> future) {
+            this.placer = placer;
+            this.job = job;
+            this.future = (CompletableFuture<? super Job>) (CompletableFuture<?>) future;
+        }
+
+        // places blocks until the deadline or until the job has to wait, returns true when the job is done
+        private boolean run(long deadline) {
+            boolean done = false;
+            boolean waiting = false;
+
+            try {
+                do {
+                    for (int i = 0; i < CHECK_INTERVAL; i++) {
+                        if (!job.isReady()) {
+                            waiting = true;
+                            break;
+                        }
+                        if (!job.placeNext()) {
+                            done = true;
+                            break;
+                        }
+                        job.placed++;
+                    }
+                } while (!done && !waiting && System.nanoTime() < deadline);
+            } catch (Exception ex) {
+                exception = ex;
+                return true;
+            }
+
+            job.ticks++;
+            if (placer.onProgress != null) {
+                placer.onProgress.accept(job.placed, job.getTotal());
+            }
+
+            return done;
+        }
+
+        private void complete() {
+            job.end = System.nanoTime();
+            job.releaseTickets();
+
+            if (exception != null) {
+                future.completeExceptionally(exception);
+            } else {
+                future.complete(job);
+            }
+        }
+
+        private void cancel() {
+            job.end = System.nanoTime();
+            job.releaseTickets();
+            future.cancel(false);
+        }
+    }
+
+    // plugin chunk tickets aren't counted by the server, so jobs of the same plugin in the same chunk share one ticket
+    private static void acquire(Ticket ticket) {
+        if (tickets.merge(ticket, 1, Integer::sum) == 1) {
+            ticket.world().addPluginChunkTicket(ticket.chunkX(), ticket.chunkZ(), ticket.plugin());
+        }
+    }
+
+    private static void release(Ticket ticket) {
+        if (tickets.merge(ticket, -1, Integer::sum) == 0) {
+            tickets.remove(ticket);
+            ticket.world().removePluginChunkTicket(ticket.chunkX(), ticket.chunkZ(), ticket.plugin());
+        }
+    }
+
+    /**
+     * A plugin chunk ticket, which keeps the chunk a job is placing in loaded.
+     */
+    private record Ticket(World world, int chunkX, int chunkZ, Plugin plugin) {
+
+    }
+
+    /**
+     * Cancels the jobs of a plugin when it is disabled, and moves the placing task to the plugin of a remaining job.
+     */
+    private static final class Disabler implements EventWatcher {
+
+        private final Plugin plugin;
+
+        private Disabler(Plugin plugin) {
+            this.plugin = plugin;
+        }
+
+        @EventHandler
+        public void disable(@NotNull PluginDisableEvent event) {
+            if (event.getPlugin() != plugin) {
+                return;
+            }
+
+            List<Entry> cancelled = new ArrayList<>();
+            for (Entry entry : active) {
+                if (entry.job.plugin == plugin) {
+                    cancelled.add(entry);
+                }
+            }
+            active.removeAll(cancelled);
+            cancelled.forEach(Entry::cancel);
+
+            if (owner == plugin) {
+                stop();
+
+                if (!active.isEmpty()) {
+                    start(active.get(0).job.plugin);
+                }
+            }
+
+            watched.remove(plugin);
+            unregisterAll();
+        }
+    }
+
+    /**
+     * A set of block changes, placed one by one.
+     * Implementations should place blocks grouped by chunk section, so every tick touches as few chunks as possible.
+     */
+    public abstract static class Job {
+
+        int placed;
+        int ticks;
+        long start;
+        long end;
+        Journal journal;
+        Plugin plugin;
+        private Ticket ticket;
+
+        /**
+         * Places the next block.
+         *
+         * @return False when there are no blocks left, true if a block was placed.
+         */
+        protected abstract boolean placeNext();
+
+        /**
+         * Whether the next block can be placed, for jobs which load their blocks in the background.
+         * When false, placing continues next tick.
+         *
+         * @return True when {@link #placeNext()} can be called, false to wait.
+         */
+        protected boolean isReady() {
+            return true;
+        }
+
+        /**
+         * Sets the data of a block, first recording its prior data if the placer has a journal.
+         * The chunk of the block is kept loaded until the job sets a block in another chunk, or is done.
+         *
+         * @param block        The block.
+         * @param data         The new data.
+         * @param applyPhysics Whether to apply physics.
+         */
+        protected void set(Block block, BlockData data, boolean applyPhysics) {
+            ticket(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
+
+            if (journal != null) {
+                journal.record(block);
+            }
+
+            block.setBlockData(data, applyPhysics);
+        }
+
+        // moves the ticket of this job to the chunk it is placing in, blocks are grouped by chunk so this rarely does anything
+        private void ticket(World world, int chunkX, int chunkZ) {
+            if (ticket != null && ticket.world() == world && ticket.chunkX() == chunkX && ticket.chunkZ() == chunkZ) {
+                return;
+            }
+
+            Ticket next = new Ticket(world, chunkX, chunkZ, plugin);
+            acquire(next); // before releasing, so a chunk shared with another job isn't unloaded in between
+            releaseTickets();
+            ticket = next;
+        }
+
+        private void releaseTickets() {
+            if (ticket != null) {
+                release(ticket);
+                ticket = null;
+            }
+        }
+
+        /**
+         * @return The total amount of steps in this job. This is the amount of blocks, or, for jobs which scan positions
+         * and only change some of them, like replacing, the amount of scanned positions.
+         */
+        public abstract int getTotal();
+
+        /**
+         * @return The amount of steps done, see {@link #getTotal()}.
+         */
+        public int getPlaced() {
+            return placed;
+        }
+
+        /**
+         * @return The amount of ticks during which blocks were placed.
+         */
+        public int getTicks() {
+            return ticks;
+        }
+
+        /**
+         * @return The amount of ms between starting and finishing this job.
+         */
+        public long getMillis() {
+            return ((end == 0 ? System.nanoTime() : end) - start) / 1_000_000;
+        }
+    }
+}
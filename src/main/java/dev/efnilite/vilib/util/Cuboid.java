@@ -1,18 +1,26 @@
 package dev.efnilite.vilib.util;
 
+import dev.efnilite.vilib.schematic.BlockStorage;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.type.Fence;
 import org.bukkit.block.data.type.Wall;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 /**
  * Asynchronously gets the {@link Block} instances between the two specified {@link Location} instances.
@@ -22,7 +30,10 @@ public class Cuboid {
 
     /**
      * The amount of changes per tick.
+     *
+     * @deprecated Blocks are placed within a time budget per tick, see {@link BlockPlacer}.
      */
+    @Deprecated
     public static final int CHANGES_PER_TICK = 2500;
 
     /**
@@ -33,33 +44,226 @@ public class Cuboid {
      * @param onComplete What to do on completion.
      */
     public static void set(@NotNull Map<Block, BlockData> blocks, Plugin plugin, @Nullable Runnable onComplete) {
-        Queue<Block> queue = new LinkedList<>(blocks.keySet());
+        set(blocks, plugin, onComplete, null);
+    }
 
-        Task.create(plugin).repeat(1).execute(new BukkitRunnable() {
-            @Override
-            public void run() {
-                for (int i = 0; i < CHANGES_PER_TICK; i++) {
-                    Block block = queue.poll();
+    /**
+     * Sets blocks in <code>blocks</code> to their respective {@link BlockData}, recording their prior data.
+     * Performs <code>onComplete</code> when block setting has finished.
+     *
+     * @param blocks     The block map.
+     * @param onComplete What to do on completion.
+     * @param journal    The journal which records the prior data of every block, or null to not record.
+     */
+    public static void set(@NotNull Map<Block, BlockData> blocks, Plugin plugin, @Nullable Runnable onComplete,
+                           @Nullable Journal journal) {
+        set(blocks, BlockPlacer.create(plugin).journal(journal)).thenRun(() -> {
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        }).exceptionally(ex -> {
+            ex.printStackTrace();
+            return null;
+        });
+    }
 
-                    if (block == null) {
-                        // no blocks left, so cancel task
-                        cancel();
+    /**
+     * Sets blocks in <code>blocks</code> to their respective {@link BlockData} over multiple ticks.
+     * Blocks are grouped by chunk section and placed within the time budget of the placer,
+     * which is shared with all other running placements. Must be called on the main thread.
+     *
+     * @param blocks The block map.
+     * @param placer The placer, which determines the budget per tick, progress reporting and journal.
+     * @return A future which completes with the amount of set blocks.
+     */
+    public static CompletableFuture<Integer> set(@NotNull Map<Block, BlockData> blocks, @NotNull BlockPlacer placer) {
+        return placer.place(new SetJob(blocks)).thenApply(BlockPlacer.Job::getPlaced);
+    }
 
-                        if (onComplete != null) {
-                            onComplete.run();
-                        }
+    /**
+     * Fills all blocks between the provided locations with the same {@link BlockData} over multiple ticks.
+     *
+     * @param pos1   The first location.
+     * @param pos2   The second location.
+     * @param data   The data to fill with.
+     * @param plugin The plugin to register the placing task with.
+     * @return A future which completes with the amount of set blocks.
+     * @see #fill(Location, Location, BlockData, BlockPlacer)
+     */
+    public static CompletableFuture<Integer> fill(@NotNull Location pos1, @NotNull Location pos2, @NotNull BlockData data,
+                                                  @NotNull Plugin plugin) {
+        return fill(pos1, pos2, data, BlockPlacer.create(plugin));
+    }
 
-                        return;
-                    }
+    /**
+     * Fills all blocks between the provided locations with the same {@link BlockData} over multiple ticks,
+     * without creating an entry per block. Blocks are set chunk section by chunk section without physics.
+     * Blocks on the edge of the region are set afterwards with physics, so blocks outside the region can connect
+     * to them, or all blocks if the data connects to its neighbours, like fences and walls.
+     * Must be called on the main thread.
+     *
+     * @param pos1   The first location.
+     * @param pos2   The second location.
+     * @param data   The data to fill with.
+     * @param placer The placer, which determines the budget per tick, progress reporting and journal.
+     * @return A future which completes with the amount of set blocks.
+     */
+    public static CompletableFuture<Integer> fill(@NotNull Location pos1, @NotNull Location pos2, @NotNull BlockData data,
+                                                  @NotNull BlockPlacer placer) {
+        return placer.place(new FillJob(pos1, pos2, null, data)).thenApply(job -> job.changed);
+    }
+
+    /**
+     * Replaces all blocks between the provided locations which match the predicate over multiple ticks.
+     *
+     * @param pos1      The first location.
+     * @param pos2      The second location.
+     * @param predicate The predicate, which is tested with the current data of every block.
+     * @param data      The data to replace matching blocks with.
+     * @param plugin    The plugin to register the placing task with.
+     * @return A future which completes with the amount of replaced blocks.
+     * @see #replace(Location, Location, Predicate, BlockData, BlockPlacer)
+     */
+    public static CompletableFuture<Integer> replace(@NotNull Location pos1, @NotNull Location pos2, @NotNull Predicate<BlockData> predicate,
+                                                     @NotNull BlockData data, @NotNull Plugin plugin) {
+        return replace(pos1, pos2, predicate, data, BlockPlacer.create(plugin));
+    }
+
+    /**
+     * Replaces all blocks between the provided locations which match the predicate over multiple ticks.
+     * Physics is applied the same way as {@link #fill(Location, Location, BlockData, BlockPlacer)}.
+     * Progress is reported in scanned positions, not replaced blocks, since every position has to be tested.
+     * Must be called on the main thread.
+     *
+     * @param pos1      The first location.
+     * @param pos2      The second location.
+     * @param predicate The predicate, which is tested with the current data of every block.
+     * @param data      The data to replace matching blocks with.
+     * @param placer    The placer, which determines the budget per tick, progress reporting and journal.
+     * @return A future which completes with the amount of replaced blocks.
+     */
+    public static CompletableFuture<Integer> replace(@NotNull Location pos1, @NotNull Location pos2, @NotNull Predicate<BlockData> predicate,
+                                                     @NotNull BlockData data, @NotNull BlockPlacer placer) {
+        return placer.place(new FillJob(pos1, pos2, predicate, data)).thenApply(job -> job.changed);
+    }
+
+    // whether the data connects to its neighbours, which requires physics to update its shape
+    private static boolean isConnectable(BlockData data) {
+        return data instanceof Fence || data instanceof Wall;
+    }
+
+    /**
+     * Sets every block of a region in two phases. First, every block inside the region is set without physics.
+     * Then, the changed blocks on the edges of the region, or all changed blocks if they're connectable, are set with physics.
+     */
+    private static class FillJob extends BlockPlacer.Job {
+
+        private final World world;
+        private final Region region;
+        private final Predicate<BlockData> predicate;
+        private final BlockData data;
+        private final boolean connectable;
+        private final Region.Cursor cursor;
+        private long[] updates = new long[64];
+        private int size;
+        private int index;
+        private boolean updating;
+        private int changed;
 
-                    setBlock(block, blocks.get(block));
+        private FillJob(Location pos1, Location pos2, Predicate<BlockData> predicate, BlockData data) {
+            this.world = pos1.getWorld() == null ? pos2.getWorld() : pos1.getWorld();
+            this.region = Region.of(pos1, pos2);
+            this.predicate = predicate;
+            this.data = data;
+            this.connectable = isConnectable(data);
+            this.cursor = region.cursor();
+        }
+
+        @Override
+        protected boolean placeNext() {
+            if (!updating) {
+                if (cursor.next()) {
+                    int x = cursor.getX();
+                    int y = cursor.getY();
+                    int z = cursor.getZ();
+                    Block block = world.getBlockAt(x, y, z);
+
+                    if (predicate == null || predicate.test(block.getBlockData())) {
+                        if (connectable || region.isEdge(x, y, z)) {
+                            defer(Region.pack(x, y, z));
+                        } else {
+                            set(block, data, false);
+                        }
+                        changed++;
+                    }
+                    return true;
                 }
+
+                updating = true;
             }
-        }).run();
+
+            if (index == size) {
+                return false;
+            }
+
+            long position = updates[index++];
+            set(world.getBlockAt(Region.unpackX(position), Region.unpackY(position), Region.unpackZ(position)), data, true);
+            return true;
+        }
+
+        // keeps a position to set with physics after all other blocks are set
+        private void defer(long position) {
+            if (size == updates.length) {
+                updates = Arrays.copyOf(updates, size * 2);
+            }
+
+            updates[size++] = position;
+        }
+
+        // every position of the region is scanned, and blocks set with physics are counted again,
+        // so the total grows while scanning as changed edges are found
+        @Override
+        public int getTotal() {
+            return (int) Math.min(Integer.MAX_VALUE, region.getVolume() + size);
+        }
     }
 
-    private static void setBlock(Block block, BlockData data) {
-        block.setBlockData(data, data instanceof Fence || data instanceof Wall);
+    /**
+     * Sets the blocks of a map, ordered by chunk section.
+     */
+    private static class SetJob extends BlockPlacer.Job {
+
+        private final List<Map.Entry<Block, BlockData>> entries;
+        private int cursor;
+
+        private SetJob(Map<Block, BlockData> blocks) {
+            this.entries = new ArrayList<>(blocks.entrySet());
+
+            entries.sort(Comparator.<Map.Entry<Block, BlockData>, UUID>comparing(entry -> entry.getKey().getWorld().getUID())
+                    .thenComparingInt(entry -> entry.getKey().getX() >> 4)
+                    .thenComparingInt(entry -> entry.getKey().getZ() >> 4)
+                    .thenComparingInt(entry -> entry.getKey().getY() >> 4));
+        }
+
+        @Override
+        protected boolean placeNext() {
+            if (cursor == entries.size()) {
+                return false;
+            }
+
+            Map.Entry<Block, BlockData> entry = entries.get(cursor);
+            entries.set(cursor, null);
+            cursor++;
+
+            BlockData data = entry.getValue();
+            set(entry.getKey(), data, isConnectable(data));
+            return true;
+        }
+
+        @Override
+        public int getTotal() {
+            return entries.size();
+        }
     }
 
     /**
@@ -69,35 +273,29 @@ public class Cuboid {
      * @param pos2 The second location
      */
     public static List<Block> get(@NotNull Location pos1, @NotNull Location pos2, boolean ignoreAir) {
+        Region region = Region.of(pos1, pos2);
+        World world = pos1.getWorld() == null ? pos2.getWorld() : pos1.getWorld();
         List<Block> blocks = new ArrayList<>();
-        Location max = Locations.max(pos1, pos2);
-        Location min = Locations.min(pos1, pos2);
-        Location location = max.clone();
-
-        location.setWorld(pos1.getWorld() == null ? pos2.getWorld() : pos1.getWorld());
-        for (int x = min.getBlockX(); x <= max.getBlockX(); x++) {
-            for (int y = min.getBlockY(); y <= max.getBlockY(); y++) {
-                for (int z = min.getBlockZ(); z <= max.getBlockZ(); z++) {
-                    location.setX(x);
-                    location.setY(y);
-                    location.setZ(z);
-
-                    if (ignoreAir) {
-                        if (location.getBlock().getType() == Material.AIR) {
-                            continue;
-                        }
-                    }
 
-                    blocks.add(location.getBlock());
-                }
+        region.forEach((x, y, z) -> {
+            Block block = world.getBlockAt(x, y, z);
+
+            if (ignoreAir && block.getType() == Material.AIR) {
+                return;
             }
-        }
+
+            blocks.add(block);
+        });
 
         return blocks;
     }
 
     /**
      * Returns all blocks between the provided locations asynchronously.
+     * Blocks are read from chunk snapshots, see {@link #read(Location, Location, Plugin)},
+     * and <code>onComplete</code> is run on the main thread.
+     * Prefer {@link #read(Location, Location, Plugin)} or {@link #scan(Location, Location, Plugin, Visitor)}
+     * for large regions, which don't create a {@link Block} per position.
      *
      * @param pos1       The first location
      * @param pos2       The second location
@@ -105,6 +303,201 @@ public class Cuboid {
      */
     public static void getAsync(@NotNull Location pos1, @NotNull Location pos2, boolean ignoreAir,
                                 Plugin plugin, @NotNull Consumer<List<Block>> onComplete) {
-        Task.create(plugin).async().execute(() -> onComplete.accept(get(pos1, pos2, ignoreAir))).run();
+        Region region = Region.of(pos1, pos2);
+        World world = pos1.getWorld() == null ? pos2.getWorld() : pos1.getWorld();
+
+        read(pos1, pos2, plugin).thenCompose(storage -> Snapshots.sync(plugin, () -> {
+            List<Block> blocks = new ArrayList<>(ignoreAir ? storage.size() : storage.getVolume());
+
+            region.forEach((x, y, z) -> {
+                if (ignoreAir && storage.get(x - region.getMinX(), y - region.getMinY(), z - region.getMinZ()) == BlockStorage.EMPTY) {
+                    return;
+                }
+
+                blocks.add(world.getBlockAt(x, y, z));
+            });
+
+            return blocks;
+        })).thenAccept(onComplete).exceptionally(ex -> {
+            ex.printStackTrace();
+            return null;
+        });
+    }
+
+    /**
+     * Reads all blocks between the provided locations into palette-indexed storage, where air is empty.
+     * Chunks are copied and read as described in {@link Snapshots}.
+     *
+     * @param pos1   The first location.
+     * @param pos2   The second location.
+     * @param plugin The plugin to register the tasks with.
+     * @return A future with the blocks, relative to the smallest location.
+     */
+    public static CompletableFuture<BlockStorage> read(@NotNull Location pos1, @NotNull Location pos2, @NotNull Plugin plugin) {
+        Region region = Region.of(pos1, pos2);
+        int height = region.getHeight();
+        int length = region.getLength();
+
+        // indices are assigned as block data is first seen, so every strip can use the same palette
+        Map<BlockData, Integer> palette = new ConcurrentHashMap<>();
+        AtomicInteger next = new AtomicInteger();
+        int[][] strips = new int[region.getMaxChunkX() - region.getMinChunkX() + 1][];
+
+        return scanStrips(pos1, pos2, plugin, (strip, chunks) -> {
+            int[] indices = new int[strip.getWidth() * height * length];
+
+            strip.forEach((x, y, z) -> {
+                ChunkSnapshot chunk = chunks.apply(z);
+
+                if (chunk.getBlockType(x & 15, y, z & 15) != Material.AIR) {
+                    int i = ((x - strip.getMinX()) * height + y - strip.getMinY()) * length + z - strip.getMinZ();
+
+                    indices[i] = palette.computeIfAbsent(chunk.getBlockData(x & 15, y, z & 15), k -> next.getAndIncrement()) + 1;
+                }
+            });
+
+            strips[strip.getMinChunkX() - region.getMinChunkX()] = indices;
+        }).thenApply(ignored -> {
+            BlockData[] paletteArray = new BlockData[palette.size()];
+            palette.forEach((data, index) -> paletteArray[index] = data);
+
+            int count = 0;
+            for (int[] indices : strips) {
+                for (int index : indices) {
+                    if (index != 0) {
+                        count++;
+                    }
+                }
+            }
+
+            BlockStorage.Builder builder = BlockStorage.builder(region.getWidth(), height, length, paletteArray, count);
+            int x = 0;
+            for (int[] indices : strips) {
+                int i = 0;
+
+                for (int stripX = 0; stripX < indices.length / (height * length); stripX++, x++) {
+                    for (int y = 0; y < height; y++) {
+                        for (int z = 0; z < length; z++, i++) {
+                            if (indices[i] != 0) {
+                                builder.set(x, y, z, indices[i] - 1);
+                            }
+                        }
+                    }
+                }
+            }
+
+            return builder.build();
+        });
+    }
+
+    /**
+     * Visits every position between the provided locations without creating a {@link Block} per position.
+     * Chunks are copied and visited as described in {@link Snapshots}.
+     *
+     * @param pos1    The first location.
+     * @param pos2    The second location.
+     * @param plugin  The plugin to register the tasks with.
+     * @param visitor The visitor, which has to be thread-safe.
+     * @return A future which completes when every position has been visited.
+     */
+    public static CompletableFuture<Void> scan(@NotNull Location pos1, @NotNull Location pos2, @NotNull Plugin plugin,
+                                               @NotNull Visitor visitor) {
+        return scanStrips(pos1, pos2, plugin, (strip, chunks) ->
+                strip.forEach((x, y, z) -> visitor.visit(x, y, z, chunks.apply(z))));
+    }
+
+    /**
+     * Counts the blocks between the provided locations which match the predicate.
+     * Chunks are copied and counted as described in {@link Snapshots}.
+     * Use {@link #histogram(Location, Location, Plugin)} to count by material, which is much cheaper,
+     * since it doesn't create {@link BlockData} for every block.
+     *
+     * @param pos1      The first location.
+     * @param pos2      The second location.
+     * @param plugin    The plugin to register the tasks with.
+     * @param predicate The predicate, which has to be thread-safe.
+     * @return A future with the amount of matching blocks.
+     */
+    public static CompletableFuture<Long> count(@NotNull Location pos1, @NotNull Location pos2, @NotNull Plugin plugin,
+                                                @NotNull Predicate<BlockData> predicate) {
+        LongAdder count = new LongAdder();
+
+        return scanStrips(pos1, pos2, plugin, (strip, chunks) -> strip.forEach((x, y, z) -> {
+            if (predicate.test(chunks.apply(z).getBlockData(x & 15, y, z & 15))) {
+                count.increment();
+            }
+        })).thenApply(ignored -> count.sum());
+    }
+
+    /**
+     * Counts the blocks between the provided locations by material.
+     * Chunks are copied and counted as described in {@link Snapshots}.
+     *
+     * @param pos1   The first location.
+     * @param pos2   The second location.
+     * @param plugin The plugin to register the tasks with.
+     * @return A future with the amount of blocks of every material.
+     */
+    public static CompletableFuture<Histogram> histogram(@NotNull Location pos1, @NotNull Location pos2, @NotNull Plugin plugin) {
+        Histogram histogram = new Histogram();
+
+        return scanStrips(pos1, pos2, plugin, (strip, chunks) -> {
+            long[] counts = Histogram.newCounts();
+
+            strip.forEach((x, y, z) -> counts[chunks.apply(z).getBlockType(x & 15, y, z & 15).ordinal()]++);
+
+            histogram.add(counts);
+        }).thenApply(ignored -> histogram);
+    }
+
+    /**
+     * Counts the blocks between the provided locations which match the predicate, and keeps the count up to date
+     * with blocks placed and broken by players. Must be called on the main thread.
+     *
+     * @param pos1      The first location.
+     * @param pos2      The second location.
+     * @param plugin    The plugin to register the tasks and listeners with.
+     * @param predicate The predicate, which has to be thread-safe.
+     * @return A future with the counter, which completes after the initial count.
+     * @see BlockCounter
+     */
+    public static CompletableFuture<BlockCounter> track(@NotNull Location pos1, @NotNull Location pos2, @NotNull Plugin plugin,
+                                                        @NotNull Predicate<BlockData> predicate) {
+        BlockCounter counter = new BlockCounter(pos1, pos2, plugin, predicate);
+        counter.register(plugin);
+
+        return counter.refresh();
+    }
+
+    /**
+     * Visits positions read from chunk snapshots.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * @param x     The x coordinate.
+         * @param y     The y coordinate.
+         * @param z     The z coordinate.
+         * @param chunk The snapshot of the chunk which contains this position.
+         *              Its coordinates are relative to the chunk, so use <code>x &amp; 15, y, z &amp; 15</code>.
+         */
+        void visit(int x, int y, int z, ChunkSnapshot chunk);
+    }
+
+    // passes the part of the region within every strip and the chunks of the strip by z coordinate, in parallel
+    private static CompletableFuture<Void> scanStrips(Location pos1, Location pos2, Plugin plugin, StripVisitor visitor) {
+        Region region = Region.of(pos1, pos2);
+        World world = pos1.getWorld() == null ? pos2.getWorld() : pos1.getWorld();
+
+        return Snapshots.forEachStrip(world, region, plugin, (chunkX, chunks) -> visitor.visit(
+                new Region(Math.max(region.getMinX(), chunkX << 4), region.getMinY(), region.getMinZ(),
+                        Math.min(region.getMaxX(), (chunkX << 4) + 15), region.getMaxY(), region.getMaxZ()),
+                z -> chunks[(z >> 4) - region.getMinChunkZ()]));
+    }
+
+    private interface StripVisitor {
+
+        void visit(Region strip, IntFunction<ChunkSnapshot> chunks);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package dev.efnilite.vilib.util;
+
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The amount of blocks of every {@link Material} in a region, stored as primitive counts.
+ *
+ * @author Efnilite
+ * @see Cuboid#histogram(org.bukkit.Location, org.bukkit.Location, org.bukkit.plugin.Plugin)
+ */
+public class Histogram {
+
+    private static final Material[] MATERIALS = Material.values();
+
+    private final long[] counts = new long[MATERIALS.length];
+
+    /**
+     * Adds counts to this histogram.
+     *
+     * @param counts The counts, indexed by {@link Material#ordinal()}.
+     */
+    synchronized void add(long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            this.counts[i] += counts[i];
+        }
+    }
+
+    /**
+     * @return A new array to count materials in, indexed by {@link Material#ordinal()}.
+     */
+    static long[] newCounts() {
+        return new long[MATERIALS.length];
+    }
+
+    /**
+     * @param material The material.
+     * @return The amount of blocks of this material.
+     */
+    public synchronized long get(@NotNull Material material) {
+        return counts[material.ordinal()];
+    }
+
+    /**
+     * @return The amount of blocks which aren't air, cave air or void air.
+     */
+    public synchronized long getSolid() {
+        long total = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            if (!MATERIALS[i].isAir()) {
+                total += counts[i];
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * @return Every material with at least one block, mapped to its amount of blocks.
+     */
+    public synchronized Map<Material, Long> toMap() {
+        Map<Material, Long> map = new EnumMap<>(Material.class);
+
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                map.put(MATERIALS[i], counts[i]);
+            }
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,17 @@
+package dev.efnilite.vilib.util;
+
+/**
+ * Accepts three ints, like block coordinates, without boxing.
+ *
+ * @author Efnilite
+ */
+@FunctionalInterface
+public interface IntTriConsumer {
+
+    /**
+     * @param x The first value.
+     * @param y The second value.
+     * @param z The third value.
+     */
+    void accept(int x, int y, int z);
+}
@@ -0,0 +1,287 @@
+package dev.efnilite.vilib.util;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records the prior {@link BlockData} of changed blocks, so they can be restored with a single {@link #restore(BlockPlacer)}.
+ * Positions are packed into a long and block data is stored as an index in a palette,
+ * so every entry takes 12 bytes instead of a {@link Block} and a map entry.
+ * When {@link #spill(int)} is set, entries are written to a temporary file once too many are held in memory.
+ * <p>Example:</p>
+ * <blockquote><code>Journal journal = Journal.create().spill(100_000);
+ * <br>schematic.pasteAsync(location, BlockPlacer.create(plugin).journal(journal));
+ * <br>journal.restore(BlockPlacer.create(plugin));</code></blockquote>
+ * <p>Journals are not thread-safe and should only be used on the main thread.</p>
+ *
+ * @author Efnilite
+ */
+public class Journal {
+
+    /**
+     * The size of an entry in a temporary file in bytes: a packed position and a palette index.
+     */
+    private static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+
+    private World world;
+    private int spillAfter = Integer.MAX_VALUE;
+    private Map<BlockData, Integer> paletteIndices = new HashMap<>();
+    private List<BlockData> palette = new ArrayList<>();
+    private long[] positions = new long[64];
+    private int[] indices = new int[64];
+    private int size;
+    private File file;
+    private List<Integer> segments = new ArrayList<>();
+    private int spilled;
+
+    /**
+     * Returns a new Journal instance, which is held in memory.
+     *
+     * @return the created Journal instance
+     */
+    public static Journal create() {
+        return new Journal();
+    }
+
+    /**
+     * Writes entries to a temporary file whenever more than the specified amount of entries are held in memory.
+     *
+     * @param entries The maximum amount of entries in memory.
+     * @return the instance of this class
+     */
+    public Journal spill(int entries) {
+        if (entries < 1) {
+            throw new IllegalArgumentException("Spill threshold must be at least 1");
+        }
+
+        this.spillAfter = entries;
+        return this;
+    }
+
+    /**
+     * Records the current data of a block. Must be called before the block is changed.
+     * All blocks in a journal have to be in the same world.
+     *
+     * @param block The block.
+     */
+    public void record(@NotNull Block block) {
+        World world = block.getWorld();
+
+        if (this.world == null) {
+            this.world = world;
+        } else if (this.world != world) {
+            throw new IllegalArgumentException("Journal only records blocks in world %s".formatted(this.world.getName()));
+        }
+
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            indices = Arrays.copyOf(indices, size * 2);
+        }
+
+        BlockData data = block.getBlockData();
+        Integer index = paletteIndices.get(data);
+        if (index == null) {
+            index = palette.size();
+            paletteIndices.put(data, index);
+            palette.add(data);
+        }
+
+        positions[size] = Region.pack(block.getX(), block.getY(), block.getZ());
+        indices[size] = index;
+        size++;
+
+        if (size >= spillAfter) {
+            spill();
+        }
+    }
+
+    /**
+     * @return The amount of recorded blocks.
+     */
+    public int size() {
+        return spilled + size;
+    }
+
+    /**
+     * @return True when no blocks have been recorded, false if there are.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Restores all recorded blocks over multiple ticks, in the reverse order of recording,
+     * so blocks which were recorded more than once end up with their oldest data.
+     * The journal is emptied immediately and can be used to record new changes while restoring.
+     * Must be called on the main thread.
+     *
+     * @param placer The placer, which determines the budget per tick and progress reporting.
+     *               Its own journal is not used while restoring.
+     * @return A future which completes with the amount of restored blocks.
+     */
+    public CompletableFuture<Integer> restore(@NotNull BlockPlacer placer) {
+        RestoreJob job = new RestoreJob(this);
+
+        world = null;
+        paletteIndices = new HashMap<>();
+        palette = new ArrayList<>();
+        positions = new long[64];
+        indices = new int[64];
+        size = 0;
+        file = null;
+        segments = new ArrayList<>();
+        spilled = 0;
+
+        CompletableFuture<RestoreJob> future = placer.place(job);
+        job.journal = null; // don't record the restored blocks in the placer's journal
+
+        return future.whenComplete((done, ex) -> job.delete()).thenApply(BlockPlacer.Job::getPlaced);
+    }
+
+    // appends all entries in memory to the temporary file as a new segment
+    private void spill() {
+        try {
+            if (file == null) {
+                file = File.createTempFile("vilib-journal", ".tmp");
+                file.deleteOnExit();
+            }
+
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                for (int i = 0; i < size; i++) {
+                    stream.writeLong(positions[i]);
+                    stream.writeInt(indices[i]);
+                }
+            }
+        } catch (IOException ex) {
+            // keep the entries in memory instead
+            ex.printStackTrace();
+            spillAfter = Integer.MAX_VALUE;
+            return;
+        }
+
+        segments.add(size);
+        spilled += size;
+        size = 0;
+    }
+
+    /**
+     * Restores the entries of a journal, starting at the entries in memory and then reading segments from last to first.
+     * Segments are read on an async thread one segment ahead, so the main thread doesn't wait for the file.
+     */
+    private static class RestoreJob extends BlockPlacer.Job {
+
+        private final World world;
+        private final List<BlockData> palette;
+        private final File file;
+        private final List<Integer> segments;
+        private final long[] offsets;
+        private final int total;
+        private long[] positions;
+        private int[] indices;
+        private int cursor;
+        private int segment;
+        private CompletableFuture<Segment> loading;
+
+        private RestoreJob(Journal journal) {
+            this.world = journal.world;
+            this.palette = journal.palette;
+            this.file = journal.file;
+            this.segments = journal.segments;
+            this.total = journal.size();
+            this.positions = journal.positions;
+            this.indices = journal.indices;
+            this.cursor = journal.size;
+            this.segment = segments.size();
+
+            this.offsets = new long[segments.size()];
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] = offsets[i - 1] + (long) segments.get(i - 1) * ENTRY_BYTES;
+            }
+        }
+
+        @Override
+        protected boolean isReady() {
+            if (loading == null && segment > 0) {
+                loading = read(segment - 1);
+            }
+            if (cursor > 0 || segment == 0) {
+                return true;
+            }
+            if (!loading.isDone()) {
+                return false;
+            }
+
+            Segment loaded = loading.join();
+            positions = loaded.positions();
+            indices = loaded.indices();
+            cursor = positions.length;
+            segment--;
+
+            loading = segment > 0 ? read(segment - 1) : null;
+            return true;
+        }
+
+        @Override
+        protected boolean placeNext() {
+            if (cursor == 0) {
+                return false;
+            }
+
+            cursor--;
+            long position = positions[cursor];
+
+            set(world.getBlockAt(Region.unpackX(position), Region.unpackY(position), Region.unpackZ(position)),
+                    palette.get(indices[cursor]), false);
+            return true;
+        }
+
+        // reads a segment from the temporary file on an async thread
+        private CompletableFuture<Segment> read(int segment) {
+            int length = segments.get(segment);
+            long offset = offsets[segment];
+
+            return CompletableFuture.supplyAsync(() -> {
+                byte[] bytes = new byte[length * ENTRY_BYTES];
+
+                try (RandomAccessFile access = new RandomAccessFile(file, "r")) {
+                    access.seek(offset);
+                    access.readFully(bytes);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+
+                long[] positions = new long[length];
+                int[] indices = new int[length];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                for (int i = 0; i < length; i++) {
+                    positions[i] = buffer.getLong();
+                    indices[i] = buffer.getInt();
+                }
+
+                return new Segment(positions, indices);
+            }, Snapshots.async(plugin));
+        }
+
+        private void delete() {
+            if (file != null) {
+                file.delete();
+            }
+        }
+
+        @Override
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    private record Segment(long[] positions, int[] indices) {
+
+    }
+}
@@ -0,0 +1,438 @@
+package dev.efnilite.vilib.util;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable box of block coordinates, where both corners are inclusive.
+ * Walking a region doesn't allocate per position, unlike collecting {@link org.bukkit.block.Block} instances.
+ * <p>Positions can be packed into a long with {@link #pack(int, int, int)}, which is used by {@link #spliterator()}
+ * and {@link #stream(boolean)}. Streams split by chunk column, so parallel streams never share a chunk between threads.</p>
+ *
+ * @author Efnilite
+ */
+public final class Region {
+
+    private final int minX, minY, minZ;
+    private final int maxX, maxY, maxZ;
+
+    /**
+     * Creates a region between two corners, in any order.
+     *
+     * @param x1 The x coordinate of the first corner.
+     * @param y1 The y coordinate of the first corner.
+     * @param z1 The z coordinate of the first corner.
+     * @param x2 The x coordinate of the second corner.
+     * @param y2 The y coordinate of the second corner.
+     * @param z2 The z coordinate of the second corner.
+     */
+    public Region(int x1, int y1, int z1, int x2, int y2, int z2) {
+        this.minX = Math.min(x1, x2);
+        this.minY = Math.min(y1, y2);
+        this.minZ = Math.min(z1, z2);
+        this.maxX = Math.max(x1, x2);
+        this.maxY = Math.max(y1, y2);
+        this.maxZ = Math.max(z1, z2);
+    }
+
+    /**
+     * Creates a region between the blocks at two locations, in any order.
+     *
+     * @param pos1 The first location.
+     * @param pos2 The second location.
+     * @return A new region.
+     */
+    public static Region of(@NotNull Location pos1, @NotNull Location pos2) {
+        return new Region(pos1.getBlockX(), pos1.getBlockY(), pos1.getBlockZ(), pos2.getBlockX(), pos2.getBlockY(), pos2.getBlockZ());
+    }
+
+    /**
+     * Visits every position in x/y/z order, where z changes fastest.
+     *
+     * @param consumer The consumer.
+     */
+    public void forEach(@NotNull IntTriConsumer consumer) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    consumer.accept(x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor which walks every position chunk section by chunk section,
+     * so work done per position touches as few chunks as possible.
+     *
+     * @return A new cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns a spliterator over the packed positions of this region, see {@link #pack(int, int, int)}.
+     * Positions are ordered by chunk column, and x/y/z within every column. Splitting divides the chunk columns.
+     *
+     * @return A new spliterator.
+     */
+    public Spliterator.OfLong spliterator() {
+        return new ColumnSpliterator(0, getColumnsX() * getColumnsZ());
+    }
+
+    /**
+     * @param parallel Whether the stream is parallel.
+     * @return A stream of the packed positions of this region, see {@link #spliterator()}.
+     */
+    public LongStream stream(boolean parallel) {
+        return StreamSupport.longStream(spliterator(), parallel);
+    }
+
+    /**
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param z The z coordinate.
+     * @return True when the position is in this region, false if not.
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param z The z coordinate.
+     * @return True when the position is on one of the faces of this region, false if it's inside or outside.
+     */
+    public boolean isEdge(int x, int y, int z) {
+        return contains(x, y, z) && (x == minX || x == maxX || y == minY || y == maxY || z == minZ || z == maxZ);
+    }
+
+    /**
+     * @return The amount of positions in this region.
+     */
+    public long getVolume() {
+        return (long) getWidth() * getHeight() * getLength();
+    }
+
+    /**
+     * @return The size over the x-axis.
+     */
+    public int getWidth() {
+        return maxX - minX + 1;
+    }
+
+    /**
+     * @return The size over the y-axis.
+     */
+    public int getHeight() {
+        return maxY - minY + 1;
+    }
+
+    /**
+     * @return The size over the z-axis.
+     */
+    public int getLength() {
+        return maxZ - minZ + 1;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    public int getMinChunkX() {
+        return minX >> 4;
+    }
+
+    public int getMinChunkZ() {
+        return minZ >> 4;
+    }
+
+    public int getMaxChunkX() {
+        return maxX >> 4;
+    }
+
+    public int getMaxChunkZ() {
+        return maxZ >> 4;
+    }
+
+    /**
+     * @param world The world.
+     * @return The smallest corner.
+     */
+    public Location getMin(World world) {
+        return new Location(world, minX, minY, minZ);
+    }
+
+    /**
+     * @param world The world.
+     * @return The largest corner.
+     */
+    public Location getMax(World world) {
+        return new Location(world, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Packs a position into a long like Minecraft block positions, with 26 bits for x and z and 12 bits for y.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param z The z coordinate.
+     * @return The packed position.
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * @param position The packed position.
+     * @return The x coordinate.
+     */
+    public static int unpackX(long position) {
+        return (int) (position >> 38);
+    }
+
+    /**
+     * @param position The packed position.
+     * @return The y coordinate.
+     */
+    public static int unpackY(long position) {
+        return (int) (position << 52 >> 52);
+    }
+
+    /**
+     * @param position The packed position.
+     * @return The z coordinate.
+     */
+    public static int unpackZ(long position) {
+        return (int) (position << 26 >> 38);
+    }
+
+    private int getColumnsX() {
+        return getMaxChunkX() - getMinChunkX() + 1;
+    }
+
+    private int getColumnsZ() {
+        return getMaxChunkZ() - getMinChunkZ() + 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Region region)) {
+            return false;
+        }
+        return minX == region.minX && minY == region.minY && minZ == region.minZ
+                && maxX == region.maxX && maxY == region.maxY && maxZ == region.maxZ;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = minX;
+        result = 31 * result + minY;
+        result = 31 * result + minZ;
+        result = 31 * result + maxX;
+        result = 31 * result + maxY;
+        result = 31 * result + maxZ;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Region{%d, %d, %d -> %d, %d, %d}".formatted(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Walks all positions of a region, chunk section by chunk section.
+     * Call {@link #next()} before reading the first position.
+     */
+    public final class Cursor {
+
+        private final int columnsZ = getColumnsZ();
+        private final int sections = (maxY >> 4) - (minY >> 4) + 1;
+        private final int count = getColumnsX() * columnsZ * sections;
+        private int section = -1;
+        private int fromY, fromZ;
+        private int toX, toY, toZ;
+        private int x, y, z;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next position.
+         *
+         * @return False when all positions have been walked, true if there is a position.
+         */
+        public boolean next() {
+            if (section >= 0) {
+                if (++z <= toZ) {
+                    return true;
+                }
+                z = fromZ;
+                if (++y <= toY) {
+                    return true;
+                }
+                y = fromY;
+                if (++x <= toX) {
+                    return true;
+                }
+            }
+
+            if (++section >= count) {
+                section = count;
+                return false;
+            }
+
+            int chunkX = getMinChunkX() + section / (columnsZ * sections);
+            int chunkZ = getMinChunkZ() + section / sections % columnsZ;
+            int sectionY = (minY >> 4) + section % sections;
+
+            x = Math.max(minX, chunkX << 4);
+            toX = Math.min(maxX, (chunkX << 4) + 15);
+            y = fromY = Math.max(minY, sectionY << 4);
+            toY = Math.min(maxY, (sectionY << 4) + 15);
+            z = fromZ = Math.max(minZ, chunkZ << 4);
+            toZ = Math.min(maxZ, (chunkZ << 4) + 15);
+            return true;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZ() {
+            return z;
+        }
+    }
+
+    /**
+     * Spliterator over a range of chunk columns, ordered by chunk x and then chunk z.
+     * Columns are never divided, and splitting is only possible before walking.
+     */
+    private final class ColumnSpliterator implements Spliterator.OfLong {
+
+        private final int columnsZ = getColumnsZ();
+        private int column;
+        private int end;
+        private boolean walking;
+        private int fromZ;
+        private int toX, toZ;
+        private int x, y, z;
+
+        private ColumnSpliterator(int column, int end) {
+            this.column = column;
+            this.end = end;
+        }
+
+        @Override
+        public OfLong trySplit() {
+            int middle = (column + end) >>> 1;
+
+            // the split off part has to precede this one, which isn't possible while walking a column
+            if (walking || middle <= column) {
+                return null;
+            }
+
+            ColumnSpliterator prefix = new ColumnSpliterator(column, middle);
+            column = middle;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (!walking) {
+                if (column >= end) {
+                    return false;
+                }
+                start(column++);
+            }
+
+            action.accept(pack(x, y, z));
+
+            if (++z > toZ) {
+                z = fromZ;
+                if (++y > maxY) {
+                    y = minY;
+                    walking = ++x <= toX;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            while (walking) {
+                tryAdvance(action);
+            }
+
+            for (; column < end; column++) {
+                start(column);
+
+                for (int x = this.x; x <= toX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        for (int z = fromZ; z <= toZ; z++) {
+                            action.accept(pack(x, y, z));
+                        }
+                    }
+                }
+            }
+            walking = false;
+        }
+
+        private void start(int column) {
+            int chunkX = getMinChunkX() + column / columnsZ;
+            int chunkZ = getMinChunkZ() + column % columnsZ;
+
+            x = Math.max(minX, chunkX << 4);
+            toX = Math.min(maxX, (chunkX << 4) + 15);
+            y = minY;
+            z = fromZ = Math.max(minZ, chunkZ << 4);
+            toZ = Math.min(maxZ, (chunkZ << 4) + 15);
+            walking = true;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (long) (end - column + (walking ? 1 : 0)) * 256 * getHeight();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dev.efnilite.vilib.util;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for reading the world through {@link ChunkSnapshot}s, which are taken on the main thread
+ * and read on async threads. Chunks are copied one strip per tick, where a strip is one chunk wide over the x-axis,
+ * to spread the cost over multiple ticks, and copied strips are read in parallel.
+ *
+ * @author Efnilite
+ */
+public final class Snapshots {
+
+    private Snapshots() {
+    }
+
+    /**
+     * Copies all chunks of a strip, which is one chunk wide over the x-axis. Must be called on the main thread.
+     *
+     * @param world     The world.
+     * @param chunkX    The x coordinate of the chunks.
+     * @param minChunkZ The smallest z coordinate of the chunks.
+     * @param maxChunkZ The largest z coordinate of the chunks.
+     * @return The snapshots, where index 0 is the chunk at minChunkZ.
+     */
+    public static ChunkSnapshot[] strip(World world, int chunkX, int minChunkZ, int maxChunkZ) {
+        ChunkSnapshot[] strip = new ChunkSnapshot[maxChunkZ - minChunkZ + 1];
+
+        for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+            strip[chunkZ - minChunkZ] = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+        }
+
+        return strip;
+    }
+
+    /**
+     * Copies all chunks of a region, one strip per tick, and passes every strip to the consumer
+     * on an async thread as soon as it has been copied.
+     *
+     * @param world    The world.
+     * @param region   The region.
+     * @param plugin   The plugin to register the tasks with.
+     * @param consumer The consumer, with the x coordinate of the strip and its snapshots.
+     * @return A future which completes when every strip has been consumed.
+     * @see #forEachStrip(World, int, int, int, int, Plugin, BiConsumer)
+     */
+    public static CompletableFuture<Void> forEachStrip(World world, Region region, Plugin plugin,
+                                                       BiConsumer<Integer, ChunkSnapshot[]> consumer) {
+        return forEachStrip(world, region.getMinChunkX(), region.getMaxChunkX(), region.getMinChunkZ(), region.getMaxChunkZ(),
+                plugin, consumer);
+    }
+
+    /**
+     * Copies all chunks between the coordinates, one strip per tick, and passes every strip to the consumer
+     * on an async thread as soon as it has been copied. Strips may be consumed in parallel and in any order,
+     * so the consumer has to be thread-safe.
+     *
+     * @param world     The world.
+     * @param minChunkX The smallest x coordinate of the chunks.
+     * @param maxChunkX The largest x coordinate of the chunks.
+     * @param minChunkZ The smallest z coordinate of the chunks.
+     * @param maxChunkZ The largest z coordinate of the chunks.
+     * @param plugin    The plugin to register the tasks with.
+     * @param consumer  The consumer, with the x coordinate of the strip and its snapshots.
+     * @return A future which completes when every strip has been consumed.
+     */
+    public static CompletableFuture<Void> forEachStrip(World world, int minChunkX, int maxChunkX, int minChunkZ, int maxChunkZ,
+                                                       Plugin plugin, BiConsumer<Integer, ChunkSnapshot[]> consumer) {
+        Executor async = async(plugin);
+        CompletableFuture<?>[] consumed = new CompletableFuture[maxChunkX - minChunkX + 1];
+        CompletableFuture<ChunkSnapshot[]> snapshot = CompletableFuture.completedFuture(null);
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            int x = chunkX;
+
+            // copying is chained so only one strip is copied per tick, consuming isn't so it can overlap
+            snapshot = snapshot.thenCompose(ignored -> sync(plugin, () -> strip(world, x, minChunkZ, maxChunkZ)));
+            consumed[x - minChunkX] = snapshot.thenAcceptAsync(strip -> consumer.accept(x, strip), async);
+        }
+
+        return CompletableFuture.allOf(consumed);
+    }
+
+    /**
+     * Runs a supplier on the main thread during the next tick.
+     *
+     * @param plugin   The plugin to register the task with.
+     * @param supplier The supplier.
+     * @param <T>      The type of the result.
+     * @return A future with the result of the supplier.
+     */
+    public static <T> CompletableFuture<T> sync(Plugin plugin, Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        Task.create(plugin).execute(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        }).run();
+
+        return future;
+    }
+
+    /**
+     * @param plugin The plugin to register the tasks with.
+     * @return An executor which runs every task as an async task.
+     * @see Task#asyncExecutor(Plugin)
+     */
+    public static Executor async(Plugin plugin) {
+        return Task.asyncExecutor(plugin);
+    }
+}
@@ -6,6 +6,8 @@ import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitScheduler;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.concurrent.Executor;
+
 /**
  * Class for easily constructing tasks.
  *
@@ -35,6 +37,16 @@ public class Task {
         return new Task(plugin);
     }
 
+    /**
+     * Returns an executor which runs every task as an async task, like for {@link java.util.concurrent.CompletableFuture}.
+     *
+     * @param plugin The plugin which to register the tasks with
+     * @return the executor
+     */
+    public static Executor asyncExecutor(Plugin plugin) {
+        return runnable -> create(plugin).async().execute(runnable).run();
+    }
+
     /**
      * Specifies which Java Runnable should be executed. This supports lambdas.
      *
@@ -0,0 +1,90 @@
+package dev.efnilite.vilib.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+
+/**
+ * Keeps track of how long server ticks take.
+ * On Paper, the server-reported average tick time is used. On other servers, the time between ticks is measured,
+ * which only exceeds {@link #TICK_MS} when the server can't keep up.
+ *
+ * @author Efnilite
+ */
+public class Ticks {
+
+    /**
+     * The target duration of a tick in ms.
+     */
+    public static final double TICK_MS = 50;
+
+    private static Method averageTickTimeMethod;
+    private static BukkitTask sampler;
+    private static long lastTick;
+    private static volatile double interval = TICK_MS;
+
+    static {
+        try {
+            averageTickTimeMethod = Server.class.getMethod("getAverageTickTime");
+        } catch (Exception ex) {
+            averageTickTimeMethod = null;
+        }
+    }
+
+    /**
+     * Starts measuring the time between ticks, if it isn't already being measured.
+     * The measuring task runs until {@link #stop()} is called.
+     *
+     * @param plugin The plugin to register the measuring task with.
+     */
+    public static void init(Plugin plugin) {
+        if (sampler != null && !sampler.isCancelled()) {
+            return;
+        }
+
+        lastTick = System.nanoTime();
+        sampler = Task.create(plugin).repeat(1).execute(() -> {
+            long now = System.nanoTime();
+
+            // exponential moving average over roughly the last 20 ticks
+            interval += ((now - lastTick) / 1_000_000.0 - interval) * 0.05;
+            lastTick = now;
+        }).run();
+    }
+
+    /**
+     * Stops measuring the time between ticks.
+     */
+    public static void stop() {
+        if (sampler != null) {
+            sampler.cancel();
+            sampler = null;
+        }
+    }
+
+    /**
+     * @return True when {@link #getMspt()} is the time spent ticking as reported by the server,
+     * false when it is the measured time between ticks.
+     */
+    public static boolean isReported() {
+        return averageTickTimeMethod != null;
+    }
+
+    /**
+     * @return The average amount of milliseconds per tick. See {@link #isReported()}.
+     */
+    public static double getMspt() {
+        if (averageTickTimeMethod != null) {
+            try {
+                return (double) averageTickTimeMethod.invoke(Bukkit.getServer());
+            } catch (Exception ex) {
+                averageTickTimeMethod = null;
+            }
+        }
+
+        return interval;
+    }
+}